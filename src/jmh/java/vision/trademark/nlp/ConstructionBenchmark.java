@@ -0,0 +1,52 @@
+package vision.trademark.nlp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold construction of a segmenter, from the gzipped text dictionaries and from a compiled lexicon file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(5)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class ConstructionBenchmark {
+    private Path compiled;
+
+    @Setup
+    public void compile() throws IOException {
+        compiled = Files.createTempFile("lexicon", ".bin");
+        Lexicon.fromResources().write(compiled);
+    }
+
+    @TearDown
+    public void delete() throws IOException {
+        Files.delete(compiled);
+    }
+
+    @Benchmark
+    public WordSegmentation fromTextDictionaries() {
+        return new WordSegmentation(Lexicon.fromResources(), 2);
+    }
+
+    @Benchmark
+    public WordSegmentation fromMappedLexicon() throws IOException {
+        return new WordSegmentation(Lexicon.map(compiled), 2);
+    }
+}
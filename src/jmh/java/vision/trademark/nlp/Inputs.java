@@ -0,0 +1,56 @@
+package vision.trademark.nlp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Texts shared by the benchmarks, selected by the name used in their {@code input} parameter.
+ */
+final class Inputs {
+    static final String SHORT = "trademarkvision";
+    static final String MEDIUM = "qqquniversityofwashingtonqqqtheheartgrowsolderMARGARETAREYOU";
+    static final String LONG = "MARGARETAREYOUGRIEVINGOVERGOLDENGROVEUNLEAVINGLEAVESLIKETHETHINGSOFMANYOUWITHYOURFRESHTHOUGHTSCAREFORCANYOUAHASTHEHEARTGROWSOLDERITWILLCOMETOSUCHSIGHTSCOLDERBYANDBYNORSPAREASIGHTHOUGHWORLDSOFWANWOODLEAFMEALLIEANDYETYOUWILLWEEPANDKNOWWHYNOWNOMATTERCHILDTHENAMESORROWSSPRINGSARETHESAMENORMOUTHHADNONORMINDEXPRESSEDWHATHEARTHEARDOFGHOSTGUESSEDITISTHEBLIGHTMANWASBORNFORITISMARGARETYOUMOURNFOR";
+
+    private Inputs() {
+    }
+
+    /**
+     * @param name short, medium, long or trademarks
+     */
+    static List<String> named(String name) {
+        switch (name) {
+            case "short":
+                return Collections.singletonList(SHORT);
+            case "medium":
+                return Collections.singletonList(MEDIUM);
+            case "long":
+                return Collections.singletonList(LONG);
+            case "trademarks":
+                return trademarks();
+            default:
+                throw new IllegalArgumentException("Unknown input " + name);
+        }
+    }
+
+    static List<String> trademarks() {
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(
+                Inputs.class.getResourceAsStream("/trademarks.txt"), StandardCharsets.UTF_8))) {
+            return r.lines().collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The text as the pipeline stages see it, after {@link WordSegmentation#segment(String)} normalizes it.
+     */
+    static String normalized(String text) {
+        return TextNormalizer.DEFAULT.normalize(text);
+    }
+}
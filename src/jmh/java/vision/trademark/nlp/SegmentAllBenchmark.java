@@ -0,0 +1,64 @@
+package vision.trademark.nlp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link WordSegmentation#segmentAll(java.util.Collection, ForkJoinPool)} throughput over the trademark
+ * corpus, in texts per second, with pools of increasing size. Compare the scores across thread counts
+ * for the scaling curve.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SegmentAllBenchmark {
+    private static final int TEXTS = 10_000;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private WordSegmentation ws;
+    private List<String> corpus;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        ws = new WordSegmentation(2);
+        List<String> marks = Inputs.trademarks();
+        corpus = new ArrayList<>(TEXTS);
+        for (int i = 0; i < TEXTS; i++) {
+            corpus.add(marks.get(i % marks.size()));
+        }
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TEXTS)
+    public List<List<String>> segmentAll() {
+        return ws.segmentAll(corpus, pool);
+    }
+}
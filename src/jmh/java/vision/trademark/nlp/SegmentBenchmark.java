@@ -0,0 +1,48 @@
+package vision.trademark.nlp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end {@link WordSegmentation#segment(String)}. The trademarks input cycles through the corpus,
+ * one mark per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SegmentBenchmark {
+    @Param({"short", "medium", "long", "trademarks"})
+    public String input;
+
+    private WordSegmentation ws;
+    private String[] texts;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        ws = new WordSegmentation(2);
+        texts = Inputs.named(input).toArray(new String[0]);
+    }
+
+    @Benchmark
+    public List<String> segment() {
+        String text = texts[next];
+        next = next + 1 == texts.length ? 0 : next + 1;
+        return ws.segment(text);
+    }
+}
@@ -0,0 +1,75 @@
+package vision.trademark.nlp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each stage of {@link WordSegmentation#segment(String, int, SegmentationWorkspace)} on its own, replayed
+ * over a lattice prepared by the stages before it. {@code segments} is the gap detection that used to be
+ * missingSegments, now folded into assembling the result.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StageBenchmark {
+    @Param({"short", "medium", "long"})
+    public String input;
+
+    private WordSegmentation ws;
+    private String text;
+    private final SegmentationWorkspace workspace = new SegmentationWorkspace();
+    private final Lattice scratch = new Lattice();
+
+    @Setup
+    public void setUp() {
+        ws = new WordSegmentation(2);
+        text = Inputs.normalized(Inputs.named(input).get(0));
+        ws.segment(text, 2, workspace);
+        scratch.lexicon = ws.lexicon();
+    }
+
+    @Benchmark
+    public int meaningfulWords() {
+        scratch.clear();
+        ws.meaningfulWords(2, text, scratch);
+        return scratch.size;
+    }
+
+    @Benchmark
+    public int connectedSets() {
+        Lattice lattice = workspace.lattice;
+        lattice.components = 0;
+        ws.connectedSets(lattice);
+        return lattice.components;
+    }
+
+    @Benchmark
+    public int optComponent() {
+        Lattice lattice = workspace.lattice;
+        lattice.pathSize = 0;
+        for (int c = 0; c < lattice.components; c++) {
+            ws.optComponent(lattice, c, workspace.decoder);
+        }
+        return lattice.pathSize;
+    }
+
+    @Benchmark
+    public List<String> segments() {
+        return ws.segments(text, workspace.lattice);
+    }
+}
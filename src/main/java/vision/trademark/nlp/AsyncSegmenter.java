@@ -0,0 +1,238 @@
+package vision.trademark.nlp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Segments asynchronously on a fixed pool of worker threads, for callers such as request handlers that should
+ * not spend their own thread on it.
+ * <p>
+ * Requests wait in a bounded queue, so a burst beyond what the workers keep up with pushes back on the callers
+ * instead of growing without limit. Each worker takes whatever is queued, up to a batch at a time, so bursts of
+ * small requests cost one hand-off per batch rather than per request. The workers share one
+ * {@link WordSegmentation}, each segmenting in its own workspace.
+ */
+public class AsyncSegmenter implements AutoCloseable {
+    private final WordSegmentation segmentation;
+    private final BlockingQueue<Request> queue;
+    private final int batchSize;
+    private final Executor completions;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean closed;
+
+    private AsyncSegmenter(Builder builder) {
+        this.segmentation = builder.segmentation;
+        this.queue = new ArrayBlockingQueue<>(builder.queueCapacity);
+        this.batchSize = builder.batchSize;
+        this.completions = builder.completions;
+        for (int i = 0; i < builder.threads; i++) {
+            Thread worker = new Thread(this::work, "segmenter-" + (i + 1));
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    public static Builder builder(WordSegmentation segmentation) {
+        return new Builder(segmentation);
+    }
+
+    /**
+     * Queues {@param text} for segmentation, waiting while the queue is full. That wait is the backpressure,
+     * and is cheap when called from a virtual thread.
+     *
+     * @return the segmentation {@link WordSegmentation#segment(String)} returns, once a worker has made it
+     */
+    public CompletableFuture<List<String>> segmentAsync(String text) {
+        Request request = new Request(text);
+        try {
+            // wakes up now and then, so callers waiting on a full queue are released by close()
+            while (!queue.offer(request, 100, TimeUnit.MILLISECONDS)) {
+                if (closed) {
+                    reject(request);
+                    return request.future;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.future.completeExceptionally(e);
+            return request.future;
+        }
+        rejectIfClosed(request);
+        return request.future;
+    }
+
+    /**
+     * As {@link #segmentAsync(String)}, but fails with a {@link RejectedExecutionException} straight away if the
+     * queue is full, for callers that would rather shed load than wait.
+     */
+    public CompletableFuture<List<String>> trySegmentAsync(String text) {
+        Request request = new Request(text);
+        if (queue.offer(request)) {
+            rejectIfClosed(request);
+        } else {
+            reject(request);
+        }
+        return request.future;
+    }
+
+    /**
+     * @return the number of requests waiting for a worker
+     */
+    public int queued() {
+        return queue.size();
+    }
+
+    /**
+     * Stops the workers once they finish their current batch, and cancels every request still queued.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        cancelQueued();
+    }
+
+    /**
+     * @return an executor running each task on its own virtual thread, on JDKs that have them
+     */
+    public static Optional<ExecutorService> virtualThreadExecutor() {
+        try {
+            Object executor = Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            return Optional.of((ExecutorService) executor);
+        } catch (ReflectiveOperationException e) {
+            return Optional.empty();
+        }
+    }
+
+    private void work() {
+        List<Request> batch = new ArrayList<>(batchSize);
+        while (!closed) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            for (Request request : batch) {
+                try {
+                    complete(request, segmentation.segment(request.text));
+                } catch (RuntimeException e) {
+                    request.future.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+        }
+        cancelQueued();
+    }
+
+    private void cancelQueued() {
+        List<Request> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        for (Request request : pending) {
+            request.future.completeExceptionally(new CancellationException("segmenter closed"));
+        }
+    }
+
+    /**
+     * Takes back a request queued while {@link #close()} was draining the queue, which no worker would take.
+     */
+    private void rejectIfClosed(Request request) {
+        if (closed && queue.remove(request)) {
+            reject(request);
+        }
+    }
+
+    private void complete(Request request, List<String> segments) {
+        if (completions == null) {
+            request.future.complete(segments);
+        } else {
+            completions.execute(() -> request.future.complete(segments));
+        }
+    }
+
+    private static void reject(Request request) {
+        request.future.completeExceptionally(new RejectedExecutionException("segmenter queue is full or closed"));
+    }
+
+    private static class Request {
+        final String text;
+        final CompletableFuture<List<String>> future = new CompletableFuture<>();
+
+        Request(String text) {
+            this.text = text;
+        }
+    }
+
+    public static final class Builder {
+        private final WordSegmentation segmentation;
+        private int queueCapacity = 1024;
+        private int batchSize = 32;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private Executor completions;
+
+        private Builder(WordSegmentation segmentation) {
+            this.segmentation = segmentation;
+        }
+
+        /**
+         * @param queueCapacity how many requests may wait for a worker before callers are held back, 1024 by default
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            if (queueCapacity < 1) {
+                throw new IllegalArgumentException("queueCapacity must be positive: " + queueCapacity);
+            }
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * @param batchSize the most requests a worker takes from the queue at once, 32 by default
+         */
+        public Builder batchSize(int batchSize) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * @param threads the number of workers, one per processor by default
+         */
+        public Builder threads(int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("threads must be positive: " + threads);
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Completes futures on {@param completions}, such as {@link #virtualThreadExecutor()}, so dependent stages
+         * run there rather than on the workers. By default the workers complete them directly.
+         */
+        public Builder completeOn(Executor completions) {
+            this.completions = completions;
+            return this;
+        }
+
+        public AsyncSegmenter build() {
+            return new AsyncSegmenter(this);
+        }
+    }
+}
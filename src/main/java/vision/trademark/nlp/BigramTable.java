@@ -0,0 +1,96 @@
+package vision.trademark.nlp;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * Bigram counts keyed by the word ids of both words, packed into one long as {@code left << 32 | right}.
+ * <p>
+ * An open addressing table with linear probing over parallel buffers of keys and counts, so lookups
+ * neither allocate nor box, and the table can be read in place from a mapped {@link Lexicon}.
+ * Counts may be quantized by their logs, see {@link ScoreTable}.
+ */
+class BigramTable {
+    private static final long EMPTY = -1L;
+
+    final LongBuffer keys;
+    final ScoreTable counts;
+    private final int mask;
+
+    BigramTable(LongBuffer keys, ScoreTable counts) {
+        if (Integer.bitCount(keys.capacity()) != 1) {
+            throw new IllegalArgumentException("Table capacity must be a power of two: " + keys.capacity());
+        }
+        this.keys = keys;
+        this.counts = counts;
+        this.mask = keys.capacity() - 1;
+    }
+
+    /**
+     * @return the count of {@param left} followed by {@param right}, or 0 if the pair is unknown
+     */
+    double count(int left, int right) {
+        long key = key(left, right);
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = keys.get(i);
+            if (k == key) {
+                return counts.get(i);
+            }
+            if (k == EMPTY) {
+                return 0;
+            }
+        }
+    }
+
+    int capacity() {
+        return keys.capacity();
+    }
+
+    int size() {
+        int size = 0;
+        for (int i = 0; i < keys.capacity(); i++) {
+            if (keys.get(i) != EMPTY) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    private int slot(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+
+    static long key(int left, int right) {
+        return (long) left << 32 | (right & 0xffffffffL);
+    }
+
+    /**
+     * @param keys   packed keys as produced by {@link #key(int, int)}, without duplicates
+     * @param counts the count for each key
+     * @param bits   the bits to quantize counts to, or {@link ScoreTable#EXACT}
+     */
+    static BigramTable of(long[] keys, long[] counts, int size, int bits) {
+        int capacity = Integer.highestOneBit(Math.max(2, size) * 2 - 1) * 2;
+        long[] tableKeys = new long[capacity];
+        double[] tableCounts = new double[capacity];
+        Arrays.fill(tableKeys, EMPTY);
+
+        BigramTable table = new BigramTable(LongBuffer.wrap(tableKeys), ScoreTable.exact(tableCounts));
+        for (int n = 0; n < size; n++) {
+            int i = table.slot(keys[n]);
+            while (tableKeys[i] != EMPTY) {
+                i = (i + 1) & table.mask;
+            }
+            tableKeys[i] = keys[n];
+            tableCounts[i] = counts[n];
+        }
+        if (bits == ScoreTable.EXACT) {
+            return table;
+        }
+        // empty slots count 0, whose log is -Infinity, and so get a level of their own
+        return new BigramTable(table.keys, ScoreTable.quantize(tableCounts, bits, Math::log10, x -> Math.pow(10, x)));
+    }
+}
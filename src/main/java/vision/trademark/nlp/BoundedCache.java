@@ -0,0 +1,272 @@
+package vision.trademark.nlp;
+
+import vision.trademark.nlp.SegmentationCache.Policy;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The bounded, concurrent map behind {@link SegmentationCache} and {@link ComponentCache}.
+ * <p>
+ * Entries are spread over independently locked segments by key hash, each evicting by its own policy once
+ * it exceeds its share of the limit. Keys should cache their hash, as it is asked for on every call.
+ */
+class BoundedCache<K, V> {
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    BoundedCache(Policy policy, long limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive: " + limit);
+        }
+        // small caches get fewer segments, so eviction still follows the policy across most of the cache
+        this.segments = (Segment[]) new BoundedCache.Segment[(int) Math.min(SEGMENTS, Long.highestOneBit(Math.max(1, limit / 64)))];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(policy, (limit + segments.length - 1 - i) / segments.length);
+        }
+    }
+
+    V get(K key) {
+        V value = segment(key).get(key);
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * @param weight what {@param value} counts against the limit
+     */
+    void put(K key, V value, long weight) {
+        segment(key).put(key, value, weight);
+    }
+
+    void remove(K key) {
+        segment(key).remove(key);
+    }
+
+    void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    SegmentationCache.Stats stats() {
+        long size = 0;
+        long weight = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.entries.size();
+                weight += segment.weight;
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return new SegmentationCache.Stats(hits.sum(), misses.sum(), evictions.sum(), size, weight);
+    }
+
+    private Segment segment(K key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        final long weight;
+        int frequency = 1;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, long weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * A circular doubly linked list with a sentinel, most recently used first.
+     */
+    private static final class NodeList<K, V> {
+        final Node<K, V> head = new Node<>(null, null, 0);
+
+        NodeList() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        boolean isEmpty() {
+            return head.next == head;
+        }
+
+        void addFirst(Node<K, V> node) {
+            node.prev = head;
+            node.next = head.next;
+            head.next.prev = node;
+            head.next = node;
+        }
+
+        void remove(Node<K, V> node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+        }
+
+        Node<K, V> last() {
+            return head.prev;
+        }
+    }
+
+    /**
+     * LRU keeps every entry in a single list. LFU keeps a list per use count, so the victim is the
+     * last entry of the lowest non-empty count, found in constant time by tracking that count.
+     */
+    private final class Segment {
+        final ReentrantLock lock = new ReentrantLock();
+        final Policy policy;
+        final long limit;
+        final Map<K, Node<K, V>> entries = new HashMap<>();
+        final Map<Integer, NodeList<K, V>> byFrequency = new HashMap<>();
+        final NodeList<K, V> recency = new NodeList<>();
+        int minFrequency;
+        long weight;
+
+        Segment(Policy policy, long limit) {
+            this.policy = policy;
+            this.limit = limit;
+        }
+
+        V get(K key) {
+            lock.lock();
+            try {
+                Node<K, V> node = entries.get(key);
+                if (node == null) {
+                    return null;
+                }
+                touch(node);
+                return node.value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(K key, V value, long w) {
+            lock.lock();
+            try {
+                Node<K, V> old = entries.remove(key);
+                if (old != null) {
+                    unlink(old);
+                    weight -= old.weight;
+                }
+                if (w > limit) {
+                    return;
+                }
+                Node<K, V> node = new Node<>(key, value, w);
+                while (weight + w > limit && !entries.isEmpty()) {
+                    Node<K, V> victim = victim();
+                    unlink(victim);
+                    entries.remove(victim.key);
+                    weight -= victim.weight;
+                    evictions.increment();
+                }
+                entries.put(key, node);
+                weight += w;
+                link(node);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void remove(K key) {
+            lock.lock();
+            try {
+                Node<K, V> node = entries.remove(key);
+                if (node != null) {
+                    unlink(node);
+                    weight -= node.weight;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                entries.clear();
+                byFrequency.clear();
+                recency.head.prev = recency.head;
+                recency.head.next = recency.head;
+                weight = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void touch(Node<K, V> node) {
+            if (policy == Policy.LRU) {
+                recency.remove(node);
+                recency.addFirst(node);
+            } else {
+                unlink(node);
+                node.frequency++;
+                link(node);
+            }
+        }
+
+        private void link(Node<K, V> node) {
+            if (policy == Policy.LRU) {
+                recency.addFirst(node);
+            } else {
+                byFrequency.computeIfAbsent(node.frequency, f -> new NodeList<>()).addFirst(node);
+                if (node.frequency == 1 || node.frequency < minFrequency) {
+                    minFrequency = node.frequency;
+                }
+            }
+        }
+
+        private void unlink(Node<K, V> node) {
+            if (policy == Policy.LRU) {
+                recency.remove(node);
+            } else {
+                NodeList<K, V> list = byFrequency.get(node.frequency);
+                list.remove(node);
+                if (list.isEmpty()) {
+                    byFrequency.remove(node.frequency);
+                    if (minFrequency == node.frequency) {
+                        minFrequency++;
+                    }
+                }
+            }
+        }
+
+        private Node<K, V> victim() {
+            if (policy == Policy.LRU) {
+                return recency.last();
+            }
+            NodeList<K, V> list = byFrequency.get(minFrequency);
+            if (list == null) {
+                // minFrequency drifted past an emptied count, e.g. after a replaced entry
+                int min = Integer.MAX_VALUE;
+                for (int f : byFrequency.keySet()) {
+                    min = Math.min(min, f);
+                }
+                minFrequency = min;
+                list = byFrequency.get(min);
+            }
+            return list.last();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package vision.trademark.nlp;
+
+import vision.trademark.nlp.SegmentationCache.Policy;
+import vision.trademark.nlp.SegmentationCache.Stats;
+
+import java.util.Objects;
+
+/**
+ * A bounded, concurrent cache of the best paths through connected components, so a component recurring
+ * inside different texts, such as "universityofwashington" within many longer marks, is decoded once.
+ * <p>
+ * A component's candidates, and so its best path, depend only on the text from its first candidate's start
+ * to its end, plus the {@code minLength - 1} chars after it that matching an article looks at. That text is
+ * the key, along with the lexicon and minLength. Works alongside a {@link SegmentationCache}, which only
+ * hits on whole texts seen before.
+ */
+public final class ComponentCache {
+    /**
+     * Smaller components decode faster than their key is built and looked up.
+     */
+    static final int MIN_CANDIDATES = 8;
+
+    private final BoundedCache<Key, Path> entries;
+    private final boolean weighed;
+
+    private ComponentCache(Policy policy, long limit, boolean weighed) {
+        this.entries = new BoundedCache<>(policy, limit);
+        this.weighed = weighed;
+    }
+
+    /**
+     * @return a cache holding at most {@param maxEntries} paths
+     */
+    public static ComponentCache byEntries(Policy policy, long maxEntries) {
+        return new ComponentCache(policy, maxEntries, false);
+    }
+
+    /**
+     * @return a cache holding roughly at most {@param maxBytes} bytes of keys and paths
+     */
+    public static ComponentCache byWeight(Policy policy, long maxBytes) {
+        return new ComponentCache(policy, maxBytes, true);
+    }
+
+    /**
+     * @return the key of {@param component}, found in {@param text} by matching at least {@param minLength} chars
+     */
+    Key key(Lattice lattice, int component, CharSequence text, int minLength) {
+        int start = lattice.starts[lattice.componentFrom[component]];
+        int end = lattice.componentEnds[component] + 1;
+        int context = Math.min(text.length(), end + minLength - 1);
+        return new Key(lattice.lexicon, minLength, text.subSequence(start, context).toString(), end - start);
+    }
+
+    /**
+     * Appends the cached best path through {@param component} to the lattice's path, as
+     * {@link ComponentDecoder#decode(Lattice, int, Lexicon)} would.
+     *
+     * @return false, leaving the lattice as it was, if there is none
+     */
+    boolean restore(Key key, Lattice lattice, int component) {
+        Path path = entries.get(key);
+        if (path == null) {
+            return false;
+        }
+        int from = lattice.componentFrom[component];
+        lattice.pathFrom[component] = lattice.pathSize;
+        for (int x : path.candidates) {
+            lattice.addToPath(from + x);
+        }
+        lattice.pathTo[component] = lattice.pathSize;
+        lattice.pathScores[component] = path.score;
+        return true;
+    }
+
+    /**
+     * Caches the best path just decoded through {@param component}.
+     */
+    void store(Key key, Lattice lattice, int component) {
+        int from = lattice.componentFrom[component];
+        int[] candidates = new int[lattice.pathTo[component] - lattice.pathFrom[component]];
+        for (int i = 0; i < candidates.length; i++) {
+            // candidates are sorted by start, so the same text yields them in the same order
+            candidates[i] = lattice.path[lattice.pathFrom[component] + i] - from;
+        }
+        long weight = weighed ? 96 + 2L * key.text.length() + 4L * candidates.length : 1;
+        entries.put(key, new Path(candidates, lattice.pathScores[component]), weight);
+    }
+
+    void remove(Key key) {
+        entries.remove(key);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public Stats stats() {
+        return entries.stats();
+    }
+
+    /**
+     * The candidates of a path, as indices from the start of their component.
+     */
+    private static final class Path {
+        final int[] candidates;
+        final double score;
+
+        Path(int[] candidates, double score) {
+            this.candidates = candidates;
+            this.score = score;
+        }
+    }
+
+    /**
+     * The component's text and the context after it, which may be cut short by the end of the text,
+     * so the component's own length is part of the key too.
+     */
+    static final class Key {
+        final Lexicon lexicon;
+        final int minLength;
+        final String text;
+        final int length;
+        final int hash;
+
+        Key(Lexicon lexicon, int minLength, String text, int length) {
+            this.lexicon = lexicon;
+            this.minLength = minLength;
+            this.text = text;
+            this.length = length;
+            this.hash = 31 * (31 * (31 * System.identityHashCode(lexicon) + text.hashCode()) + length) + minLength;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return lexicon == key.lexicon &&
+                    minLength == key.minLength &&
+                    length == key.length &&
+                    Objects.equals(text, key.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
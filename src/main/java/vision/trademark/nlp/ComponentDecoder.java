@@ -0,0 +1,209 @@
+package vision.trademark.nlp;
+
+import java.util.Arrays;
+
+/**
+ * Picks the best path through each component of a {@link Lattice}, a bottom-up port of the original recursive
+ * opt()/path().
+ * <p>
+ * Candidates are ordered by end and numbered from 1, with 0 meaning "none". Each candidate j may follow the
+ * last candidate ending just before it ({@code prev[j]}), and either starts a path or extends the best path
+ * ending there. When the candidate before j ends at the same position, the best of the two is carried forward.
+ * Only the entries the recursion would have visited are computed, since the path walk compares scores by
+ * presence as well as value.
+ * <p>
+ * The scratch arrays are kept between calls, so a decoder must not be shared between threads.
+ */
+class ComponentDecoder {
+    private int[] byEnd = new int[64];
+    private int[] lastEnding = new int[64];
+    private int[] prev = new int[64];
+    private int[] prevAlt = new int[64];
+    private boolean[] carry = new boolean[64];
+    private boolean[] visited = new boolean[64];
+    private double[] opt = new double[64];
+
+    /**
+     * Bigram lookups made, and how many found a count, since the counters were last reset.
+     */
+    int bigramLookups;
+    int bigramHits;
+
+    /**
+     * Appends the best path through {@param component} to the lattice's path.
+     */
+    void decode(Lattice lattice, int component, Lexicon lexicon) {
+        int from = lattice.componentFrom[component];
+        int n = lattice.componentTo[component] - from;
+        int last = lattice.componentEnds[component];
+        int origin = lattice.starts[from];
+        int first = last;
+        for (int i = from; i < from + n; i++) {
+            first = Math.min(first, lattice.ends[i]);
+        }
+        ensureCapacity(n + 1, last - first + 2);
+
+        // stable counting sort by end, which leaves lastEnding[e] just past the last candidate ending at first + e
+        int span = last - first + 1;
+        Arrays.fill(lastEnding, 0, span + 1, 0);
+        for (int i = from; i < from + n; i++) {
+            lastEnding[lattice.ends[i] - first + 1]++;
+        }
+        for (int e = 1; e <= span; e++) {
+            lastEnding[e] += lastEnding[e - 1];
+        }
+        for (int i = from; i < from + n; i++) {
+            byEnd[lastEnding[lattice.ends[i] - first]++] = i;
+        }
+
+        int[] ends = lattice.ends;
+        for (int j = 1; j <= n; j++) {
+            int x = byEnd[j - 1];
+            int before = lattice.starts[x] - 1;
+            int p = before >= first && before <= last ? lastEnding[before - first] : 0;
+            if (p > 0 && ends[byEnd[p - 1]] == before) {
+                prev[j] = p;
+                prevAlt[j] = p >= 2 && ends[byEnd[p - 2]] == before ? p - 1 : 0;
+            } else {
+                prev[j] = 0;
+                prevAlt[j] = 0;
+            }
+            // the first candidate compares against the last, as the python port indexed lst[-1]
+            int other = j >= 2 ? j - 2 : n - 1;
+            carry[j] = ends[byEnd[other]] == ends[x];
+        }
+
+        Arrays.fill(visited, 0, n + 1, false);
+        visited[n] = true;
+        for (int j = n; j >= 1; j--) {
+            if (visited[j]) {
+                visited[prev[j]] = true;
+                if (carry[j]) {
+                    visited[j - 1] = true;
+                }
+            }
+        }
+
+        for (int j = 1; j <= n; j++) {
+            if (!visited[j]) {
+                continue;
+            }
+            int x = byEnd[j - 1];
+            double choose = prev[j] == 0
+                    ? lattice.scores[x] + penalize(lattice, x, -1, origin, lexicon)
+                    : opt[prev[j]] + lattice.scores[x] + penalize(lattice, x, byEnd[prev[j] - 1], origin, lexicon);
+            opt[j] = carry[j] && j > 1 ? Double.max(choose, opt[j - 1]) : choose;
+        }
+
+        int pathFrom = lattice.pathSize;
+        for (int j = n; j > 0; ) {
+            boolean same = j >= 2
+                    ? sameScore(j, j - 1)
+                    : visited[1] && Double.doubleToLongBits(opt[1]) == Double.doubleToLongBits(0d);
+            if (same && j != 1) {
+                j = j - 1;
+                continue;
+            }
+            lattice.addToPath(byEnd[j - 1]);
+            if (same) {
+                break;
+            }
+            if (prevAlt[j] == 0 || !visited[prevAlt[j]]) {
+                j = prev[j];
+            } else if (!visited[prev[j]]) {
+                j = prevAlt[j];
+            } else {
+                double maxP = Double.max(opt[prev[j]], opt[prevAlt[j]]);
+                j = Double.doubleToLongBits(opt[prev[j]]) == Double.doubleToLongBits(maxP) ? prev[j] : prevAlt[j];
+            }
+        }
+        reverse(lattice.path, pathFrom, lattice.pathSize);
+
+        lattice.pathFrom[component] = pathFrom;
+        lattice.pathTo[component] = lattice.pathSize;
+        lattice.pathScores[component] = opt[n];
+    }
+
+    /**
+     * Unvisited entries compare like the nulls of the original memo: equal to each other and to nothing else.
+     */
+    private boolean sameScore(int i, int j) {
+        if (!visited[i] || !visited[j]) {
+            return visited[i] == visited[j];
+        }
+        return Double.doubleToLongBits(opt[i]) == Double.doubleToLongBits(opt[j]);
+    }
+
+    /**
+     * @param prev the candidate before {@param curr} in the path, or -1 if {@param curr} starts it
+     */
+    private double penalize(Lattice lattice, int curr, int prev, int origin, Lexicon lexicon) {
+        if (prev < 0) {
+            return gapPenalty(lattice, curr, origin);
+        }
+        double count = 0;
+        if (lattice.starts[curr] - lattice.ends[prev] == 1) {
+            count = lexicon.bigramCount(lattice.wordIds[prev], lattice.wordIds[curr]);
+            bigramLookups++;
+            if (count != 0) {
+                bigramHits++;
+            }
+        }
+        return stupidBackoff(lattice, prev, count);
+    }
+
+    /**
+     * Penalizes the gap before {@param curr}, a candidate that starts a path, by its distance from
+     * {@param origin}, the first start in its component.
+     * <p>
+     * Measuring from the component rather than the text start shifts every path through a component by
+     * the same amount, so the best path is unchanged, and depends only on the component's own text.
+     */
+    static double gapPenalty(Lattice lattice, int curr, int origin) {
+        double penalty = -10.0; //FIXME how was this arrived at?
+        return penalty * (lattice.starts[curr] - origin);
+    }
+
+    /**
+     * Stupid backoff from http://www.aclweb.org/anthology/D07-1090.pdf
+     *
+     * @param count the count of the bigram {@param prev} forms with the next candidate, or 0 if it backs off
+     */
+    static double stupidBackoff(Lattice lattice, int prev, double count) {
+        return stupidBackoff(lattice.scores[prev], count);
+    }
+
+    /**
+     * @param score the unigram score of the first word of the bigram
+     */
+    static double stupidBackoff(double score, double count) {
+        double alpha = 0.4;
+        if (count != 0) {
+            return (count / Lexicon.TOTAL) / score;
+        }
+        return score * alpha;
+    }
+
+    private void ensureCapacity(int candidates, int positions) {
+        if (prev.length < candidates) {
+            int capacity = Math.max(candidates, prev.length * 2);
+            byEnd = new int[capacity];
+            prev = new int[capacity];
+            prevAlt = new int[capacity];
+            carry = new boolean[capacity];
+            visited = new boolean[capacity];
+            opt = new double[capacity];
+        }
+        if (lastEnding.length < positions) {
+            lastEnding = new int[Math.max(positions, lastEnding.length * 2)];
+        }
+    }
+
+    private static void reverse(int[] xs, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            int x = xs[i];
+            xs[i] = xs[j];
+            xs[j] = x;
+        }
+    }
+}
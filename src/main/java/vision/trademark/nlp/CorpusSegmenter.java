@@ -0,0 +1,329 @@
+package vision.trademark.nlp;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Segments a UTF-8 file line by line into another, one segmented line per input line, for corpora too large to
+ * go through {@link WordSegmentation#segment(String)} one call at a time.
+ * Run by the segmentCorpus Gradle task; usage: {@code CorpusSegmenter [options] <input> <output>}.
+ * <p>
+ * The input is mapped a chunk of whole lines at a time, and chunks are segmented in parallel by one shared
+ * {@link WordSegmentation}, but written out in order, each in a single channel write. After every chunk the
+ * output is forced to disk and the offsets reached are saved to the checkpoint file, if there is one, so a
+ * run that fails part way can be started again with the same arguments and carries on from there.
+ */
+public class CorpusSegmenter {
+    private static final String USAGE = "usage: CorpusSegmenter [--min-length n] [--lexicon <file>] [--threads n]"
+            + " [--chunk-bytes n] [--separator s] [--checkpoint <file>] <input> <output>";
+
+    private static final long REPORT_NANOS = 5_000_000_000L;
+
+    private final WordSegmentation segmentation;
+    private final int threads;
+    private final int chunkBytes;
+    private final String separator;
+
+    /**
+     * @param threads    the number of chunks segmented at once
+     * @param chunkBytes roughly how much of the input each chunk holds, more for lines longer than that
+     * @param separator  put between the words of a line
+     */
+    public CorpusSegmenter(WordSegmentation segmentation, int threads, int chunkBytes, String separator) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        if (chunkBytes < 1) {
+            throw new IllegalArgumentException("chunkBytes must be positive: " + chunkBytes);
+        }
+        this.segmentation = segmentation;
+        this.threads = threads;
+        this.chunkBytes = chunkBytes;
+        this.separator = separator;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int minLength = WordSegmentation.DEFAULT_MIN_LENGTH;
+        Path lexicon = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int chunkBytes = 8 << 20;
+        String separator = " ";
+        Path checkpoint = null;
+        List<Path> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--min-length":
+                        minLength = Integer.parseInt(args[++i]);
+                        break;
+                    case "--lexicon":
+                        lexicon = Paths.get(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--chunk-bytes":
+                        chunkBytes = Integer.parseInt(args[++i]);
+                        break;
+                    case "--separator":
+                        separator = args[++i];
+                        break;
+                    case "--checkpoint":
+                        checkpoint = Paths.get(args[++i]);
+                        break;
+                    default:
+                        if (args[i].startsWith("--")) {
+                            throw new IllegalArgumentException(args[i]);
+                        }
+                        files.add(Paths.get(args[i]));
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            files.clear();
+        }
+        if (files.size() != 2) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        WordSegmentation segmentation = new WordSegmentation(
+                lexicon == null ? Lexicon.defaultLexicon() : Lexicon.map(lexicon), minLength);
+        Progress progress = new CorpusSegmenter(segmentation, threads, chunkBytes, separator)
+                .run(files.get(0), files.get(1), checkpoint);
+        System.err.println(progress);
+    }
+
+    /**
+     * Segments {@param input} into {@param output}, resuming from {@param checkpoint} if it exists.
+     *
+     * @param checkpoint where to save progress, or null to always start over
+     * @throws IOException if the checkpoint does not fit the files, as when either was changed or replaced
+     * @return the lines segmented by this run, and how fast
+     */
+    public Progress run(Path input, Path output, Path checkpoint) throws IOException, InterruptedException {
+        Checkpoint start = checkpoint != null && Files.exists(checkpoint) ? Checkpoint.read(checkpoint) : new Checkpoint();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            check(start, checkpoint, in, input, out, output);
+            // anything written past the checkpoint was never confirmed, and is segmented again
+            out.truncate(start.output);
+            out.position(start.output);
+
+            Progress progress = new Progress(System.nanoTime());
+            long reported = progress.startNanos;
+            Checkpoint done = start;
+            Deque<Future<Chunk>> pending = new ArrayDeque<>();
+            long position = start.input;
+            long size = in.size();
+            while (position < size || !pending.isEmpty()) {
+                // a couple of chunks in flight per thread keeps every thread busy while the oldest is written
+                while (position < size && pending.size() < 2 * threads) {
+                    MappedByteBuffer bytes = nextChunk(in, position, size);
+                    long end = position + bytes.limit();
+                    pending.add(executor.submit(() -> segment(bytes, end)));
+                    position = end;
+                }
+                Chunk chunk = get(pending.poll());
+                while (chunk.bytes.hasRemaining()) {
+                    out.write(chunk.bytes);
+                }
+                progress.lines += chunk.lines;
+                done = new Checkpoint(chunk.inputEnd, out.position(), done.lines + chunk.lines);
+                if (checkpoint != null) {
+                    out.force(false);
+                    done.write(checkpoint);
+                }
+                long now = System.nanoTime();
+                if (now - reported >= REPORT_NANOS) {
+                    System.err.println(progress.at(now) + ", " + done.lines + " lines in total");
+                    reported = now;
+                }
+            }
+            return progress.at(System.nanoTime());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Fails unless {@param start} could have been saved by a run over these files: the input must still
+     * have a line starting at its offset, and the output must hold everything written up to it.
+     */
+    private static void check(Checkpoint start, Path checkpoint, FileChannel in, Path input, FileChannel out, Path output)
+            throws IOException {
+        if (start.input > in.size() || start.input > 0 && !endsLine(in, start.input - 1)) {
+            throw new IOException("Checkpoint " + checkpoint + " is not at the start of a line of " + input
+                    + ", delete it to start over");
+        }
+        if (start.output > out.size()) {
+            throw new IOException("Checkpoint " + checkpoint + " is past the end of " + output
+                    + ", delete it to start over");
+        }
+    }
+
+    private static boolean endsLine(FileChannel in, long position) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(1);
+        return in.read(b, position) == 1 && b.get(0) == '\n';
+    }
+
+    /**
+     * @return the whole lines from {@param position} on, as many as fit in a chunk, or the one line there if
+     * it is longer
+     */
+    private MappedByteBuffer nextChunk(FileChannel in, long position, long size) throws IOException {
+        long length = Math.min(chunkBytes, size - position);
+        while (true) {
+            MappedByteBuffer bytes = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+            if (position + length == size) {
+                return bytes;
+            }
+            for (int i = (int) length - 1; i >= 0; i--) {
+                if (bytes.get(i) == '\n') {
+                    ((Buffer) bytes).limit(i + 1);
+                    return bytes;
+                }
+            }
+            if (length == Integer.MAX_VALUE) {
+                throw new IOException("Line at offset " + position + " is longer than " + Integer.MAX_VALUE + " bytes");
+            }
+            length = Math.min(Math.min(2 * length, size - position), Integer.MAX_VALUE);
+        }
+    }
+
+    private Chunk segment(ByteBuffer bytes, long inputEnd) {
+        CharBuffer chars = StandardCharsets.UTF_8.decode(bytes);
+        StringBuilder out = new StringBuilder(chars.length() + chars.length() / 4);
+        int lines = 0;
+        int start = 0;
+        int length = chars.length();
+        while (start < length) {
+            int end = start;
+            while (end < length && chars.get(end) != '\n') {
+                end++;
+            }
+            int lineEnd = end > start && chars.get(end - 1) == '\r' ? end - 1 : end;
+            List<String> words = segmentation.segment(chars.subSequence(start, lineEnd).toString());
+            for (int i = 0; i < words.size(); i++) {
+                if (i > 0) {
+                    out.append(separator);
+                }
+                out.append(words.get(i));
+            }
+            out.append('\n');
+            lines++;
+            start = end + 1;
+        }
+        return new Chunk(StandardCharsets.UTF_8.encode(CharBuffer.wrap(out)), lines, inputEnd);
+    }
+
+    private static Chunk get(Future<Chunk> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Segmenting failed", e.getCause());
+        }
+    }
+
+    private static class Chunk {
+        final ByteBuffer bytes;
+        final int lines;
+        final long inputEnd;
+
+        Chunk(ByteBuffer bytes, int lines, long inputEnd) {
+            this.bytes = bytes;
+            this.lines = lines;
+            this.inputEnd = inputEnd;
+        }
+    }
+
+    /**
+     * How far a run has got: the input and output offsets of the first line not yet written, and the
+     * number of lines before it.
+     */
+    static class Checkpoint {
+        final long input;
+        final long output;
+        final long lines;
+
+        Checkpoint() {
+            this(0, 0, 0);
+        }
+
+        Checkpoint(long input, long output, long lines) {
+            this.input = input;
+            this.output = output;
+            this.lines = lines;
+        }
+
+        static Checkpoint read(Path path) throws IOException {
+            String[] fields = new String(Files.readAllBytes(path), StandardCharsets.US_ASCII).trim().split(" ");
+            if (fields.length != 3) {
+                throw new IOException("Not a checkpoint file: " + path);
+            }
+            return new Checkpoint(Long.parseLong(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+        }
+
+        /**
+         * Replaces the file in one move, so a crash leaves either the last checkpoint or this one.
+         */
+        void write(Path path) throws IOException {
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(temp, (input + " " + output + " " + lines + "\n").getBytes(StandardCharsets.US_ASCII));
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * The lines a run has segmented so far, and how long it took.
+     */
+    public static final class Progress {
+        private final long startNanos;
+        private long lines;
+        private long nanos;
+
+        Progress(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        Progress at(long now) {
+            nanos = now - startNanos;
+            return this;
+        }
+
+        public long getLines() {
+            return lines;
+        }
+
+        public double getSeconds() {
+            return nanos / 1e9;
+        }
+
+        public double getLinesPerSecond() {
+            return nanos == 0 ? 0 : lines / getSeconds();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d lines in %.1fs, %.0f lines/s", lines, getSeconds(), getLinesPerSecond());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package vision.trademark.nlp;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Totals the metrics of every segmentation in memory, for tests and ad hoc diagnosis.
+ */
+public class InMemorySegmentationListener implements SegmentationListener {
+    private final LongAdder segmentations = new LongAdder();
+    private final LongAdder matchNanos = new LongAdder();
+    private final LongAdder componentNanos = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+    private final LongAdder candidates = new LongAdder();
+    private final LongAccumulator maxCandidates = new LongAccumulator(Long::max, 0);
+    private final LongAdder components = new LongAdder();
+    private final LongAccumulator largestComponent = new LongAccumulator(Long::max, 0);
+    private final LongAdder bigramLookups = new LongAdder();
+    private final LongAdder bigramHits = new LongAdder();
+
+    @Override
+    public void onSegment(SegmentationMetrics metrics) {
+        segmentations.increment();
+        matchNanos.add(metrics.matchNanos);
+        componentNanos.add(metrics.componentNanos);
+        decodeNanos.add(metrics.decodeNanos);
+        candidates.add(metrics.candidates);
+        maxCandidates.accumulate(metrics.candidates);
+        components.add(metrics.components);
+        largestComponent.accumulate(metrics.largestComponent);
+        bigramLookups.add(metrics.bigramLookups);
+        bigramHits.add(metrics.bigramHits);
+    }
+
+    public long getSegmentations() {
+        return segmentations.sum();
+    }
+
+    public long getMatchNanos() {
+        return matchNanos.sum();
+    }
+
+    public long getComponentNanos() {
+        return componentNanos.sum();
+    }
+
+    public long getDecodeNanos() {
+        return decodeNanos.sum();
+    }
+
+    public long getCandidates() {
+        return candidates.sum();
+    }
+
+    /**
+     * @return the most candidates found in any one text
+     */
+    public long getMaxCandidates() {
+        return maxCandidates.get();
+    }
+
+    public long getComponents() {
+        return components.sum();
+    }
+
+    /**
+     * @return the most candidates in any one component of any text
+     */
+    public long getLargestComponent() {
+        return largestComponent.get();
+    }
+
+    public long getBigramLookups() {
+        return bigramLookups.sum();
+    }
+
+    public long getBigramHits() {
+        return bigramHits.sum();
+    }
+}
@@ -0,0 +1,272 @@
+package vision.trademark.nlp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Finds the k best segmentations of a text from its {@link Lattice} of candidates and components.
+ * <p>
+ * Within a component, every candidate keeps the k best partial paths ending at it, each a link to an entry of a
+ * predecessor's list. Since a transition only depends on the two candidates, those lists are merged lazily from
+ * the predecessors' sorted lists, taking O((p + k) log p) per candidate for p predecessors. A full path ends at
+ * a candidate covering the component's last position. Components are independent, so the best segmentations of
+ * the text are the k best sums of one path per component, again merged lazily.
+ * <p>
+ * Paths are ranked by their total score over the whole lattice, so the best one need not be what
+ * {@link ComponentDecoder} picks, which only looks at the last two candidates ending before each one.
+ */
+class KBestDecoder {
+    private final Lexicon lexicon;
+    private final int k;
+
+    /**
+     * Partial paths: the score so far, the candidate they end at, and the entry they extend, or -1.
+     */
+    private int entries;
+    private double[] entryScores = new double[64];
+    private int[] entryCandidates = new int[64];
+    private int[] entryPrev = new int[64];
+
+    KBestDecoder(Lexicon lexicon, int k) {
+        this.lexicon = lexicon;
+        this.k = k;
+    }
+
+    /**
+     * @return up to k segmentations of {@param text} through {@param lattice}, best first
+     */
+    List<ScoredSegmentation> decode(String text, Lattice lattice) {
+        // the ranks into each component's paths making up each combination, best first
+        int[][] combinations = {new int[0]};
+        double[] combinationScores = {0};
+        List<int[][]> paths = new ArrayList<>();
+        for (int c = 0; c < lattice.components; c++) {
+            List<Double> scores = new ArrayList<>();
+            int[][] componentPaths = decode(lattice, c, scores);
+            paths.add(componentPaths);
+
+            double[] xs = new double[scores.size()];
+            for (int i = 0; i < xs.length; i++) {
+                xs[i] = scores.get(i);
+            }
+            Combined combined = combine(combinationScores, xs);
+            int[][] next = new int[combined.scores.length][];
+            for (int i = 0; i < next.length; i++) {
+                next[i] = Arrays.copyOf(combinations[combined.left[i]], c + 1);
+                next[i][c] = combined.right[i];
+            }
+            combinations = next;
+            combinationScores = combined.scores;
+        }
+
+        List<ScoredSegmentation> results = new ArrayList<>();
+        for (int i = 0; i < combinations.length; i++) {
+            List<String> words = new ArrayList<>();
+            int covered = 0;
+            for (int c = 0; c < lattice.components; c++) {
+                int[] path = paths.get(c)[combinations[i][c]];
+                int start = lattice.starts[path[0]];
+                if (start > covered) {
+                    words.add(text.substring(covered, start));
+                }
+                for (int x : path) {
+                    words.add(lexicon.trie.word(lattice.wordIds[x]));
+                }
+                covered = lattice.componentEnds[c] + 1;
+            }
+            if (covered < text.length()) {
+                words.add(text.substring(covered));
+            }
+            results.add(new ScoredSegmentation(words, combinationScores[i]));
+        }
+        return results;
+    }
+
+    /**
+     * @return up to k paths through {@param component}, best first, as candidate indices in text order, with
+     * their scores added to {@param scores}
+     */
+    private int[][] decode(Lattice lattice, int component, List<Double> scores) {
+        int from = lattice.componentFrom[component];
+        int to = lattice.componentTo[component];
+        int last = lattice.componentEnds[component];
+        int first = last;
+        for (int i = from; i < to; i++) {
+            first = Math.min(first, lattice.ends[i]);
+        }
+
+        // candidates ordered by end, with the ones ending at first + e in [endingFrom[e], endingFrom[e + 1])
+        int span = last - first + 1;
+        int[] endingFrom = new int[span + 1];
+        for (int i = from; i < to; i++) {
+            endingFrom[lattice.ends[i] - first + 1]++;
+        }
+        for (int e = 1; e <= span; e++) {
+            endingFrom[e] += endingFrom[e - 1];
+        }
+        int[] byEnd = new int[to - from];
+        int[] fill = Arrays.copyOf(endingFrom, span);
+        for (int i = from; i < to; i++) {
+            byEnd[fill[lattice.ends[i] - first]++] = i;
+        }
+
+        // the k best partial paths ending at each candidate are entries [listFrom[x - from], listTo[x - from])
+        entries = 0;
+        int[] listFrom = new int[to - from];
+        int[] listTo = new int[to - from];
+        PriorityQueue<Head> heads = new PriorityQueue<>();
+        for (int x : byEnd) {
+            heads.clear();
+            // gaps are measured from the text start, so totals stay the scores of whole paths
+            heads.add(new Head(lattice.scores[x] + ComponentDecoder.gapPenalty(lattice, x, 0), -1, 0, 0));
+            int before = lattice.starts[x] - 1 - first;
+            if (before >= 0) {
+                for (int i = endingFrom[before]; i < endingFrom[before + 1]; i++) {
+                    int p = byEnd[i];
+                    double count = lexicon.bigramCount(lattice.wordIds[p], lattice.wordIds[x]);
+                    double step = lattice.scores[x] + ComponentDecoder.stupidBackoff(lattice, p, count);
+                    int entry = listFrom[p - from];
+                    heads.add(new Head(entryScores[entry] + step, entry, listTo[p - from], step));
+                }
+            }
+            listFrom[x - from] = entries;
+            while (entries - listFrom[x - from] < k && !heads.isEmpty()) {
+                Head head = heads.poll();
+                add(head.score, x, head.entry);
+                if (head.entry >= 0 && head.entry + 1 < head.end) {
+                    heads.add(new Head(entryScores[head.entry + 1] + head.step, head.entry + 1, head.end, head.step));
+                }
+            }
+            listTo[x - from] = entries;
+        }
+
+        heads.clear();
+        for (int i = endingFrom[span - 1]; i < endingFrom[span]; i++) {
+            int x = byEnd[i];
+            int entry = listFrom[x - from];
+            heads.add(new Head(entryScores[entry], entry, listTo[x - from], 0));
+        }
+        List<int[]> paths = new ArrayList<>();
+        while (paths.size() < k && !heads.isEmpty()) {
+            Head head = heads.poll();
+            paths.add(path(head.entry));
+            scores.add(head.score);
+            if (head.entry + 1 < head.end) {
+                heads.add(new Head(entryScores[head.entry + 1], head.entry + 1, head.end, 0));
+            }
+        }
+        return paths.toArray(new int[0][]);
+    }
+
+    /**
+     * @return the k best sums of an element of {@param left} and one of {@param right}, both sorted best first
+     */
+    private Combined combine(double[] left, double[] right) {
+        int capacity = Math.min(k, left.length * right.length);
+        Combined combined = new Combined(capacity);
+        PriorityQueue<Sum> sums = new PriorityQueue<>();
+        Set<Long> seen = new HashSet<>();
+        sums.add(new Sum(left[0] + right[0], 0, 0));
+        seen.add(0L);
+        for (int n = 0; n < capacity; n++) {
+            Sum sum = sums.poll();
+            int i = sum.left;
+            int j = sum.right;
+            combined.scores[n] = sum.score;
+            combined.left[n] = i;
+            combined.right[n] = j;
+            if (i + 1 < left.length && seen.add((long) (i + 1) * right.length + j)) {
+                sums.add(new Sum(left[i + 1] + right[j], i + 1, j));
+            }
+            if (j + 1 < right.length && seen.add((long) i * right.length + j + 1)) {
+                sums.add(new Sum(left[i] + right[j + 1], i, j + 1));
+            }
+        }
+        return combined;
+    }
+
+    private int[] path(int entry) {
+        int length = 0;
+        for (int e = entry; e >= 0; e = entryPrev[e]) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int e = entry; e >= 0; e = entryPrev[e]) {
+            path[--length] = entryCandidates[e];
+        }
+        return path;
+    }
+
+    private void add(double score, int candidate, int prev) {
+        if (entries == entryScores.length) {
+            entryScores = Arrays.copyOf(entryScores, entries * 2);
+            entryCandidates = Arrays.copyOf(entryCandidates, entries * 2);
+            entryPrev = Arrays.copyOf(entryPrev, entries * 2);
+        }
+        entryScores[entries] = score;
+        entryCandidates[entries] = candidate;
+        entryPrev[entries] = prev;
+        entries++;
+    }
+
+    /**
+     * The next unmerged entry of a sorted list of partial paths: its score plus the step taken from it, its index,
+     * and where the list ends. Ties go to the earlier entry.
+     */
+    private static class Head implements Comparable<Head> {
+        final double score;
+        final int entry;
+        final int end;
+        final double step;
+
+        Head(double score, int entry, int end, double step) {
+            this.score = score;
+            this.entry = entry;
+            this.end = end;
+            this.step = step;
+        }
+
+        @Override
+        public int compareTo(Head o) {
+            int c = Double.compare(o.score, score);
+            return c != 0 ? c : Integer.compare(entry, o.entry);
+        }
+    }
+
+    private static class Sum implements Comparable<Sum> {
+        final double score;
+        final int left;
+        final int right;
+
+        Sum(double score, int left, int right) {
+            this.score = score;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public int compareTo(Sum o) {
+            int c = Double.compare(o.score, score);
+            if (c == 0) {
+                c = Integer.compare(left, o.left);
+            }
+            return c != 0 ? c : Integer.compare(right, o.right);
+        }
+    }
+
+    private static class Combined {
+        final double[] scores;
+        final int[] left;
+        final int[] right;
+
+        Combined(int capacity) {
+            scores = new double[capacity];
+            left = new int[capacity];
+            right = new int[capacity];
+        }
+    }
+}
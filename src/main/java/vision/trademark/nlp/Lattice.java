@@ -0,0 +1,140 @@
+package vision.trademark.nlp;
+
+import java.util.Arrays;
+
+/**
+ * The candidate words found in a text, as parallel arrays sorted by start, the connected
+ * components they form, and the best path chosen through each component.
+ * <p>
+ * Everything is kept in growable primitive arrays so a lattice can be cleared and
+ * refilled for the next text without allocating.
+ */
+class Lattice {
+    /**
+     * The lexicon the candidates' word ids refer to, which stays the same for the whole of one segmentation.
+     */
+    Lexicon lexicon;
+
+    int size;
+    int[] starts = new int[64];
+    int[] ends = new int[64];
+    int[] wordIds = new int[64];
+    double[] scores = new double[64];
+
+    /**
+     * Components are ranges {@code [componentFrom, componentTo)} of candidate indices,
+     * along with the last position any of their candidates covers.
+     */
+    int components;
+    int[] componentFrom = new int[16];
+    int[] componentTo = new int[16];
+    int[] componentEnds = new int[16];
+
+    /**
+     * The best path through each component, as a range {@code [pathFrom, pathTo)} of {@link #path},
+     * which holds candidate indices in text order.
+     */
+    int[] pathFrom = new int[16];
+    int[] pathTo = new int[16];
+    double[] pathScores = new double[16];
+    int pathSize;
+    int[] path = new int[64];
+
+    void clear() {
+        size = 0;
+        components = 0;
+        pathSize = 0;
+    }
+
+    void add(int start, int end, int wordId, double score) {
+        if (size == starts.length) {
+            grow(size * 2);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        wordIds[size] = wordId;
+        scores[size] = score;
+        size++;
+    }
+
+    /**
+     * Appends candidates {@code [from, to)} of {@param source}, moved {@param shift} positions along the text.
+     */
+    void addAll(Lattice source, int from, int to, int shift) {
+        int n = to - from;
+        if (size + n > starts.length) {
+            grow(Math.max(size * 2, size + n));
+        }
+        System.arraycopy(source.starts, from, starts, size, n);
+        System.arraycopy(source.ends, from, ends, size, n);
+        System.arraycopy(source.wordIds, from, wordIds, size, n);
+        System.arraycopy(source.scores, from, scores, size, n);
+        if (shift != 0) {
+            for (int i = size; i < size + n; i++) {
+                starts[i] += shift;
+                ends[i] += shift;
+            }
+        }
+        size += n;
+    }
+
+    private void grow(int capacity) {
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        wordIds = Arrays.copyOf(wordIds, capacity);
+        scores = Arrays.copyOf(scores, capacity);
+    }
+
+    void addComponent(int from, int to, int end) {
+        if (components == componentFrom.length) {
+            int capacity = components * 2;
+            componentFrom = Arrays.copyOf(componentFrom, capacity);
+            componentTo = Arrays.copyOf(componentTo, capacity);
+            componentEnds = Arrays.copyOf(componentEnds, capacity);
+            pathFrom = Arrays.copyOf(pathFrom, capacity);
+            pathTo = Arrays.copyOf(pathTo, capacity);
+            pathScores = Arrays.copyOf(pathScores, capacity);
+        }
+        componentFrom[components] = from;
+        componentTo[components] = to;
+        componentEnds[components] = end;
+        components++;
+    }
+
+    void addToPath(int candidate) {
+        if (pathSize == path.length) {
+            path = Arrays.copyOf(path, pathSize * 2);
+        }
+        path[pathSize++] = candidate;
+    }
+
+    /**
+     * Appends {@param component} of {@param source} along with its best path, for candidates copied
+     * {@param offset} indices along and {@param shift} positions along the text.
+     */
+    void addComponent(Lattice source, int component, int offset, int shift) {
+        addComponent(source.componentFrom[component] + offset, source.componentTo[component] + offset,
+                source.componentEnds[component] + shift);
+        int c = components - 1;
+        pathFrom[c] = pathSize;
+        for (int i = source.pathFrom[component]; i < source.pathTo[component]; i++) {
+            addToPath(source.path[i] + offset);
+        }
+        pathTo[c] = pathSize;
+        pathScores[c] = source.pathScores[component];
+    }
+
+    /**
+     * @return the first position covered by the best path through {@param component}
+     */
+    int pathStart(int component) {
+        return starts[path[pathFrom[component]]];
+    }
+
+    /**
+     * @return how many candidates this lattice can hold before growing
+     */
+    int capacity() {
+        return starts.length;
+    }
+}
@@ -0,0 +1,583 @@
+package vision.trademark.nlp;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The dictionaries behind {@link WordSegmentation}: the candidate words, their unigram scores and the bigram counts.
+ * <p>
+ * A lexicon is immutable once built, so a single instance can be shared by any number of
+ * segmenters and threads. Unigram scores are precomputed as log10 probabilities indexed by
+ * word id, and bigram counts are kept in a {@link BigramTable} keyed by the ids of both words.
+ * <p>
+ * Every table is a primitive buffer, so a lexicon can be {@link #write(Path) written} once at
+ * build time and {@link #map(Path) mapped} straight back in without any parsing. Setting the
+ * {@value #LEXICON_PROPERTY} system property to such a file makes it the {@link #defaultLexicon()}.
+ */
+public final class Lexicon {
+    static final double TOTAL = 1024908267229.0;
+
+    /**
+     * Matched at every offset regardless of minLength, see {@link WordSegmentation}.
+     */
+    static final String ARTICLE = "a";
+
+    public static final String LEXICON_PROPERTY = "wordsegmentation.lexicon";
+    static final String COMPILED_RESOURCE = "/lexicon.bin";
+
+    private static final int MAGIC = 0x57534c58; // WSLX
+    private static final int VERSION = 3;
+    private static final int HEADER_BYTES = 48;
+
+    private static final int UNIGRAM_LEVELS = 0;
+    private static final int UNIGRAM_SCORES = 1;
+    private static final int BIGRAM_KEYS = 2;
+    private static final int BIGRAM_LEVELS = 3;
+    private static final int BIGRAM_COUNTS = 4;
+    private static final int FIRST_CHILD = 5;
+    private static final int CHILD_COUNT = 6;
+    private static final int WORD_IDS = 7;
+    private static final int WORD_OFFSETS = 8;
+    private static final int LABELS = 9;
+    private static final int WORD_CHARS = 10;
+
+    final WordTrie trie;
+    final int articleId;
+    final int longestWord;
+    private final ScoreTable unigramScores;
+    private final BigramTable bigrams;
+
+    private Lexicon(WordTrie trie, ScoreTable unigramScores, BigramTable bigrams) {
+        this.trie = trie;
+        this.articleId = trie.find(ARTICLE);
+        this.longestWord = trie.longestWord();
+        this.unigramScores = unigramScores;
+        this.bigrams = bigrams;
+    }
+
+    /**
+     * @return a builder for lexicons pruned or quantized to take less memory, see {@link LexiconCompiler}
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the lexicon built from the bundled dictionaries, loaded on first use and shared afterwards.
+     * A compiled lexicon packaged in the jar is extracted to the temp dir once and mapped from there.
+     */
+    public static Lexicon defaultLexicon() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Maps a file written by {@link #write(Path)}. Nothing is copied onto the heap, so the
+     * pages are shared with every other process mapping the same file.
+     */
+    public static Lexicon map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public void write(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = encode();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    double unigramScore(int wordId) {
+        return unigramScores.get(wordId);
+    }
+
+    /**
+     * @return the count of {@param left} followed by {@param right}, or 0 if the pair is unknown
+     */
+    double bigramCount(int left, int right) {
+        return bigrams.count(left, right);
+    }
+
+    /**
+     * @return the number of words matched
+     */
+    int words() {
+        return trie.size();
+    }
+
+    /**
+     * @return the number of bigrams with a count
+     */
+    int bigrams() {
+        return bigrams.size();
+    }
+
+    static Lexicon of(Set<String> unigrams, Map<String, Long> fullUnigramCounts, Map<String, Long> bigramCounts) {
+        return builder().build(unigrams, fullUnigramCounts, bigramCounts);
+    }
+
+    private static Lexicon of(Set<String> unigrams, Map<String, Long> fullUnigramCounts, Map<String, Long> bigramCounts,
+                              Builder options) {
+        Set<String> words = new HashSet<>();
+        for (String word : unigrams) {
+            Long x = fullUnigramCounts.get(word);
+            if ((x == null ? 0 : x) >= options.minUnigramCount) {
+                words.add(word);
+            }
+        }
+        words.add(ARTICLE);
+        WordTrie trie = WordTrie.of(words);
+
+        double scale = Math.log10(TOTAL);
+        double[] oovScores = oovScores(trie.longestWord());
+        double[] unigramScores = new double[trie.size()];
+        for (int id = 0; id < unigramScores.length; id++) {
+            String word = trie.word(id);
+            Long x = fullUnigramCounts.get(word);
+            unigramScores[id] = x != null ? Math.log10(x) - scale : oovScores[word.length()];
+        }
+
+        // bigrams are only ever looked up between two candidate words, so pairs outside the trie are dropped
+        long[] keys = new long[bigramCounts.size()];
+        long[] counts = new long[bigramCounts.size()];
+        int size = 0;
+        for (Map.Entry<String, Long> e : bigramCounts.entrySet()) {
+            String bigram = e.getKey();
+            int space = bigram.indexOf(' ');
+            if (space < 0) {
+                continue;
+            }
+            int left = trie.find(bigram.substring(0, space));
+            int right = trie.find(bigram.substring(space + 1));
+            long count = e.getValue();
+            if (left == WordTrie.NONE || right == WordTrie.NONE || count < options.minBigramCount) {
+                continue;
+            }
+            if (options.pruneBackoff && ComponentDecoder.stupidBackoff(unigramScores[left], count)
+                    <= ComponentDecoder.stupidBackoff(unigramScores[left], 0)) {
+                // the backoff scores as well, so the count can never change a path
+                continue;
+            }
+            keys[size] = BigramTable.key(left, right);
+            counts[size] = count;
+            size++;
+        }
+        return new Lexicon(trie,
+                ScoreTable.quantize(unigramScores, options.bits, x -> x, x -> x),
+                BigramTable.of(keys, counts, size, options.bits));
+    }
+
+    /**
+     * @return the scores of words without a count, by length: a probability of 10 / 10^length relative to
+     * {@link #TOTAL}. Taking the log of the power directly, as log10(10^n) is exactly n, keeps words longer
+     * than 308 chars from overflowing to an infinite penalty.
+     */
+    static double[] oovScores(int maxLength) {
+        double scale = Math.log10(TOTAL);
+        double[] scores = new double[maxLength + 1];
+        for (int length = 0; length <= maxLength; length++) {
+            scores[length] = Math.log10(10.0) - (scale + length);
+        }
+        return scores;
+    }
+
+    /**
+     * Lays the tables out as a header of counts followed by one 8 byte aligned section per table.
+     */
+    ByteBuffer encode() {
+        int nodes = trie.nodes();
+        int words = trie.size();
+        int wordChars = trie.wordChars.capacity();
+        int bigramSlots = bigrams.capacity();
+        ScoreTable counts = bigrams.counts;
+
+        Sections sections = layout(nodes, words, wordChars, bigramSlots,
+                unigramScores.bits, unigramScores.levels.capacity(), counts.bits, counts.levels.capacity());
+
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(sections.end));
+        buffer.putInt(MAGIC).putInt(VERSION)
+                .putInt(nodes).putInt(words).putInt(wordChars).putInt(bigramSlots)
+                .putInt(unigramScores.bits).putInt(unigramScores.levels.capacity())
+                .putInt(counts.bits).putInt(counts.levels.capacity());
+
+        encode(unigramScores, sections.slice(buffer, UNIGRAM_LEVELS), sections.slice(buffer, UNIGRAM_SCORES));
+        sections.slice(buffer, BIGRAM_KEYS).asLongBuffer().put(rewind(bigrams.keys.duplicate()));
+        encode(counts, sections.slice(buffer, BIGRAM_LEVELS), sections.slice(buffer, BIGRAM_COUNTS));
+        sections.slice(buffer, FIRST_CHILD).asIntBuffer().put(rewind(trie.firstChild.duplicate()));
+        sections.slice(buffer, CHILD_COUNT).asIntBuffer().put(rewind(trie.childCount.duplicate()));
+        sections.slice(buffer, WORD_IDS).asIntBuffer().put(rewind(trie.wordIds.duplicate()));
+        sections.slice(buffer, WORD_OFFSETS).asIntBuffer().put(rewind(trie.wordOffsets.duplicate()));
+        sections.slice(buffer, LABELS).asCharBuffer().put(rewind(trie.labels.duplicate()));
+        sections.slice(buffer, WORD_CHARS).asCharBuffer().put(rewind(trie.wordChars.duplicate()));
+
+        rewind(buffer);
+        return buffer;
+    }
+
+    static Lexicon read(ByteBuffer buffer) {
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a lexicon file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported lexicon version " + buffer.getInt(4));
+        }
+        int nodes = buffer.getInt(8);
+        int words = buffer.getInt(12);
+        int wordChars = buffer.getInt(16);
+        int bigramSlots = buffer.getInt(20);
+        int unigramBits = buffer.getInt(24);
+        int unigramLevels = buffer.getInt(28);
+        int bigramBits = buffer.getInt(32);
+        int bigramLevels = buffer.getInt(36);
+
+        Sections sections = layout(nodes, words, wordChars, bigramSlots,
+                unigramBits, unigramLevels, bigramBits, bigramLevels);
+        if (buffer.limit() < sections.end) {
+            throw new IllegalArgumentException("Truncated lexicon file");
+        }
+
+        WordTrie trie = new WordTrie(
+                sections.slice(buffer, LABELS).asCharBuffer(),
+                sections.slice(buffer, FIRST_CHILD).asIntBuffer(),
+                sections.slice(buffer, CHILD_COUNT).asIntBuffer(),
+                sections.slice(buffer, WORD_IDS).asIntBuffer(),
+                sections.slice(buffer, WORD_OFFSETS).asIntBuffer(),
+                sections.slice(buffer, WORD_CHARS).asCharBuffer());
+        BigramTable bigrams = new BigramTable(
+                sections.slice(buffer, BIGRAM_KEYS).asLongBuffer(),
+                decode(bigramBits, sections.slice(buffer, BIGRAM_LEVELS), sections.slice(buffer, BIGRAM_COUNTS)));
+        ScoreTable unigramScores =
+                decode(unigramBits, sections.slice(buffer, UNIGRAM_LEVELS), sections.slice(buffer, UNIGRAM_SCORES));
+        return new Lexicon(trie, unigramScores, bigrams);
+    }
+
+    /**
+     * Sections in the order of the constants above, sized from the header counts.
+     */
+    private static Sections layout(int nodes, int words, int wordChars, int bigramSlots,
+                                   int unigramBits, int unigramLevels, int bigramBits, int bigramLevels) {
+        Sections sections = new Sections(HEADER_BYTES);
+        sections.add(8L * unigramLevels);
+        sections.add(ScoreTable.codeBytes(unigramBits, words));
+        sections.add(8L * bigramSlots);
+        sections.add(8L * bigramLevels);
+        sections.add(ScoreTable.codeBytes(bigramBits, bigramSlots));
+        sections.add(4L * nodes);
+        sections.add(4L * nodes);
+        sections.add(4L * nodes);
+        sections.add(4L * (words + 1));
+        sections.add(2L * nodes);
+        sections.add(2L * wordChars);
+        return sections;
+    }
+
+    private static void encode(ScoreTable table, ByteBuffer levels, ByteBuffer codes) {
+        levels.asDoubleBuffer().put(rewind(table.levels.duplicate()));
+        if (table.bits == ScoreTable.EXACT) {
+            codes.asDoubleBuffer().put(rewind(((DoubleBuffer) table.codes).duplicate()));
+        } else if (table.bits == 16) {
+            codes.asShortBuffer().put(rewind(((ShortBuffer) table.codes).duplicate()));
+        } else {
+            codes.put(rewind(((ByteBuffer) table.codes).duplicate()));
+        }
+    }
+
+    private static ScoreTable decode(int bits, ByteBuffer levels, ByteBuffer codes) {
+        if (bits != ScoreTable.EXACT && bits != 16 && bits != 8) {
+            throw new IllegalArgumentException("Unsupported quantization to " + bits + " bits");
+        }
+        Buffer buffer = bits == ScoreTable.EXACT ? codes.asDoubleBuffer() : bits == 16 ? codes.asShortBuffer() : codes;
+        return new ScoreTable(bits, levels.asDoubleBuffer(), buffer);
+    }
+
+    /**
+     * Declaring the same section sizes in the same order yields the same offsets,
+     * which keeps {@link #encode()} and {@link #read(ByteBuffer)} in step.
+     */
+    private static class Sections {
+        private final long[] offsets = new long[16];
+        private final long[] sizes = new long[16];
+        private int count;
+        private long end;
+
+        Sections(long start) {
+            this.end = start;
+        }
+
+        void add(long size) {
+            offsets[count] = end;
+            sizes[count] = size;
+            count++;
+            end = (end + size + 7) & ~7L;
+        }
+
+        ByteBuffer slice(ByteBuffer buffer, int section) {
+            ByteBuffer duplicate = buffer.duplicate();
+            ((Buffer) duplicate).position(Math.toIntExact(offsets[section]));
+            ((Buffer) duplicate).limit(Math.toIntExact(offsets[section] + sizes[section]));
+            return duplicate.slice();
+        }
+    }
+
+    private static <T extends Buffer> T rewind(T buffer) {
+        buffer.rewind();
+        return buffer;
+    }
+
+    /**
+     * Builds a lexicon from word lists in the format of the bundled dictionaries: a word and its count per line,
+     * separated by a tab, with the two words of a bigram separated by a space.
+     *
+     * @param unigrams      the words to match
+     * @param unigramCounts the counts to score them by, words missing here are scored by length
+     * @param bigrams       the counts of adjacent pairs of words
+     */
+    public static Lexicon load(InputStream unigrams, InputStream unigramCounts, InputStream bigrams) throws IOException {
+        return builder().load(unigrams, unigramCounts, bigrams);
+    }
+
+    /**
+     * As {@link #load(InputStream, InputStream, InputStream)}, decompressing files whose names end in .gz.
+     */
+    public static Lexicon load(Path unigrams, Path unigramCounts, Path bigrams) throws IOException {
+        return builder().load(unigrams, unigramCounts, bigrams);
+    }
+
+    static Lexicon fromResources() {
+        return builder().fromResources();
+    }
+
+    static Map<String, Long> loadWordList(String resourcePath) {
+        try (InputStream in = new GZIPInputStream(Lexicon.class.getResourceAsStream(resourcePath))) {
+            return loadWordList(in);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads {@param in} as UTF-8 without closing it.
+     */
+    static Map<String, Long> loadWordList(InputStream in) throws IOException {
+        BufferedReader r = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        HashMap<String, Long> xs = new HashMap<>();
+        try {
+            r.lines()
+                    .filter(StringUtils::isNotBlank)
+                    .map(x -> x.split("\t"))
+                    .filter(x -> x.length == 2)
+                    .forEach(x -> {
+                        String key = x[0].trim().toLowerCase();
+                        Long val = Long.parseLong(x[1]);
+                        xs.put(key, val);
+                    });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return xs;
+    }
+
+    private static InputStream open(Path path) throws IOException {
+        InputStream in = Files.newInputStream(path);
+        if (!path.getFileName().toString().endsWith(".gz")) {
+            return in;
+        }
+        try {
+            return new GZIPInputStream(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Prefers, in order, the file named by {@value #LEXICON_PROPERTY}, a compiled lexicon
+     * packaged alongside the classes, and finally the gzipped text dictionaries.
+     */
+    private static Lexicon loadDefault() {
+        try {
+            String path = System.getProperty(LEXICON_PROPERTY);
+            if (path != null) {
+                return map(Paths.get(path));
+            }
+            try (InputStream in = Lexicon.class.getResourceAsStream(COMPILED_RESOURCE)) {
+                if (in != null) {
+                    Path extracted;
+                    try {
+                        extracted = extract(in);
+                    } catch (IOException e) {
+                        // nowhere to put it, such as a read-only temp dir
+                        return fromResources();
+                    }
+                    return map(extracted);
+                }
+            }
+            return fromResources();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Copies the compiled lexicon packaged in the jar to the temp dir, named by a digest of its contents, so
+     * it can be mapped. JVMs running the same jar find the same file there, and map the same pages.
+     */
+    private static Path extract(InputStream in) throws IOException {
+        Path dir = Paths.get(System.getProperty("java.io.tmpdir"));
+        Path temp = Files.createTempFile(dir, "wordsegmentation-lexicon", ".tmp");
+        try {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(temp), digest)) {
+                byte[] chunk = new byte[1 << 16];
+                for (int n = in.read(chunk); n != -1; n = in.read(chunk)) {
+                    out.write(chunk, 0, n);
+                }
+            }
+            StringBuilder name = new StringBuilder("wordsegmentation-lexicon-");
+            for (byte b : Arrays.copyOf(digest.digest(), 12)) {
+                name.append(String.format("%02x", b));
+            }
+            Path path = dir.resolve(name.append(".bin").toString());
+            if (!Files.exists(path)) {
+                try {
+                    Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+                    return path;
+                } catch (IOException e) {
+                    // another JVM extracted the same lexicon first
+                    if (!Files.exists(path)) {
+                        throw e;
+                    }
+                }
+            }
+            // only trust a file another user could not have put there in advance
+            if (!Files.getOwner(path).equals(Files.getOwner(temp))) {
+                temp.toFile().deleteOnExit();
+                Path own = temp;
+                temp = null;
+                return own;
+            }
+            return path;
+        } finally {
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * Prunes and quantizes the dictionaries as a lexicon is built from them. By default nothing is pruned and
+     * every score is kept at full precision, which builds the same lexicon as {@link #load(Path, Path, Path)}.
+     */
+    public static final class Builder {
+        private long minUnigramCount;
+        private long minBigramCount;
+        private boolean pruneBackoff;
+        private int bits = ScoreTable.EXACT;
+
+        private Builder() {
+        }
+
+        /**
+         * Leaves the words counted fewer than {@param minUnigramCount} times out of matching, apart from the
+         * article. Any positive count also leaves out the words without a count, which are scored by length.
+         */
+        public Builder minUnigramCount(long minUnigramCount) {
+            this.minUnigramCount = minUnigramCount;
+            return this;
+        }
+
+        /**
+         * Drops the bigrams counted fewer than {@param minBigramCount} times, so they back off instead.
+         */
+        public Builder minBigramCount(long minBigramCount) {
+            this.minBigramCount = minBigramCount;
+            return this;
+        }
+
+        /**
+         * Drops the bigrams whose stupid backoff score is no better than backing off, as their counts can
+         * never change a segmentation.
+         */
+        public Builder pruneBackoff(boolean pruneBackoff) {
+            this.pruneBackoff = pruneBackoff;
+            return this;
+        }
+
+        /**
+         * Quantizes unigram scores, which are log probabilities, and the logs of bigram counts to {@param bits}
+         * bits each: 8 or 16. Scores then cost 1 or 2 bytes rather than 8, plus a table of at most 2^bits levels.
+         */
+        public Builder quantize(int bits) {
+            if (bits != 8 && bits != 16) {
+                throw new IllegalArgumentException("bits must be 8 or 16: " + bits);
+            }
+            this.bits = bits;
+            return this;
+        }
+
+        /**
+         * @see Lexicon#load(InputStream, InputStream, InputStream)
+         */
+        public Lexicon load(InputStream unigrams, InputStream unigramCounts, InputStream bigrams) throws IOException {
+            return build(loadWordList(unigrams).keySet(), loadWordList(unigramCounts), loadWordList(bigrams));
+        }
+
+        /**
+         * @see Lexicon#load(Path, Path, Path)
+         */
+        public Lexicon load(Path unigrams, Path unigramCounts, Path bigrams) throws IOException {
+            try (InputStream u = open(unigrams); InputStream c = open(unigramCounts); InputStream b = open(bigrams)) {
+                return load(u, c, b);
+            }
+        }
+
+        Lexicon fromResources() {
+            return build(
+                    loadWordList("/unigrams.txt.gz").keySet(),
+                    loadWordList("/unigrams.txt.original.gz"),
+                    loadWordList("/bigrams.txt.gz"));
+        }
+
+        Lexicon build(Set<String> unigrams, Map<String, Long> fullUnigramCounts, Map<String, Long> bigramCounts) {
+            return of(unigrams, fullUnigramCounts, bigramCounts, this);
+        }
+    }
+
+    private static class DefaultHolder {
+        static final Lexicon INSTANCE = loadDefault();
+    }
+}
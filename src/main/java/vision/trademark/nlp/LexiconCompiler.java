@@ -0,0 +1,148 @@
+package vision.trademark.nlp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles the bundled dictionaries into the binary format read by {@link Lexicon#map(Path)}.
+ * Run by the compileLexicon Gradle task; usage: {@code LexiconCompiler [options] <output file>}.
+ * <p>
+ * The options prune and quantize the lexicon, see {@link Lexicon.Builder}, and {@code --report} compares it
+ * to the full lexicon on a held-out file of already segmented text, one phrase per line with the words
+ * separated by spaces, to show what accuracy the memory saved costs.
+ */
+public class LexiconCompiler {
+    private static final String USAGE = "usage: LexiconCompiler [--min-unigram-count n] [--min-bigram-count n]"
+            + " [--prune-backoff] [--bits 8|16] [--report <held-out file>] [--min-length n] <output file>";
+
+    public static void main(String[] args) throws IOException {
+        Lexicon.Builder builder = Lexicon.builder();
+        Path report = null;
+        int minLength = WordSegmentation.DEFAULT_MIN_LENGTH;
+        Path out = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--min-unigram-count":
+                        builder.minUnigramCount(Long.parseLong(args[++i]));
+                        break;
+                    case "--min-bigram-count":
+                        builder.minBigramCount(Long.parseLong(args[++i]));
+                        break;
+                    case "--prune-backoff":
+                        builder.pruneBackoff(true);
+                        break;
+                    case "--bits":
+                        builder.quantize(Integer.parseInt(args[++i]));
+                        break;
+                    case "--report":
+                        report = Paths.get(args[++i]);
+                        break;
+                    case "--min-length":
+                        minLength = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        if (out != null || args[i].startsWith("--")) {
+                            throw new IllegalArgumentException(args[i]);
+                        }
+                        out = Paths.get(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            out = null;
+        }
+        if (out == null) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        if (out.getParent() != null) {
+            Files.createDirectories(out.getParent());
+        }
+        Lexicon lexicon = builder.fromResources();
+        lexicon.write(out);
+
+        if (report != null) {
+            List<String> heldOut = Files.readAllLines(report, StandardCharsets.UTF_8);
+            System.out.printf("%-8s %12s %8s %8s %10s %8s%n", "lexicon", "bytes", "words", "bigrams", "accuracy", "word F1");
+            print("full", Lexicon.fromResources(), heldOut, minLength);
+            print("compact", lexicon, heldOut, minLength);
+        }
+    }
+
+    private static void print(String name, Lexicon lexicon, List<String> heldOut, int minLength) {
+        Accuracy accuracy = Accuracy.of(new WordSegmentation(lexicon, minLength), heldOut);
+        System.out.printf("%-8s %12d %8d %8d %10.4f %8.4f%n", name, lexicon.encode().capacity(),
+                lexicon.words(), lexicon.bigrams(), accuracy.phraseAccuracy(), accuracy.f1());
+    }
+
+    /**
+     * How closely segmentations match held-out ones, by whole phrases and by words with the same span.
+     */
+    static class Accuracy {
+        int phrases;
+        int correctPhrases;
+        long expectedWords;
+        long foundWords;
+        long correctWords;
+
+        static Accuracy of(WordSegmentation segmentation, List<String> heldOut) {
+            Accuracy accuracy = new Accuracy();
+            for (String line : heldOut) {
+                List<String> expected = new ArrayList<>();
+                for (String word : TextNormalizer.DEFAULT.normalize(line).split(" ")) {
+                    if (!word.isEmpty()) {
+                        expected.add(word);
+                    }
+                }
+                if (!expected.isEmpty()) {
+                    accuracy.add(expected, segmentation.segment(String.join("", expected)));
+                }
+            }
+            return accuracy;
+        }
+
+        void add(List<String> expected, List<String> found) {
+            phrases++;
+            if (found.equals(expected)) {
+                correctPhrases++;
+            }
+            expectedWords += expected.size();
+            foundWords += found.size();
+            // both cover the same text, so a word is found where a found word starts and ends with it
+            int e = 0;
+            int f = 0;
+            int expectedStart = 0;
+            int foundStart = 0;
+            while (e < expected.size() && f < found.size()) {
+                int expectedEnd = expectedStart + expected.get(e).length();
+                int foundEnd = foundStart + found.get(f).length();
+                if (expectedStart == foundStart && expectedEnd == foundEnd) {
+                    correctWords++;
+                }
+                if (expectedEnd <= foundEnd) {
+                    expectedStart = expectedEnd;
+                    e++;
+                }
+                if (foundEnd <= expectedEnd) {
+                    foundStart = foundEnd;
+                    f++;
+                }
+            }
+        }
+
+        double phraseAccuracy() {
+            return phrases == 0 ? 0 : (double) correctPhrases / phrases;
+        }
+
+        double f1() {
+            long sum = expectedWords + foundWords;
+            return sum == 0 ? 0 : 2.0 * correctWords / sum;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package vision.trademark.nlp;
+
+import java.util.Arrays;
+
+/**
+ * The output of a {@link TextNormalizer}: the normalized chars, and for each the range of the input it came from.
+ * <p>
+ * Whitespace is only kept once something follows it, so chars from {@link #committed} to {@link #size} are
+ * whitespace that {@link #finish()} trims if the input ends there.
+ */
+class NormalizedText implements CharSequence {
+    char[] chars = new char[64];
+    int[] origins = new int[64];
+    int[] originEnds = new int[64];
+    int size;
+    int committed;
+    boolean started;
+
+    void clear() {
+        size = 0;
+        committed = 0;
+        started = false;
+    }
+
+    void add(char c, int origin, int originEnd) {
+        if (size == chars.length) {
+            chars = Arrays.copyOf(chars, size * 2);
+            origins = Arrays.copyOf(origins, size * 2);
+            originEnds = Arrays.copyOf(originEnds, size * 2);
+        }
+        chars[size] = c;
+        origins[size] = origin;
+        originEnds[size] = originEnd;
+        size++;
+    }
+
+    /**
+     * Trims the trailing whitespace, once the input has ended.
+     */
+    void finish() {
+        size = committed;
+    }
+
+    /**
+     * Drops the first {@param n} chars.
+     */
+    void drop(int n) {
+        System.arraycopy(chars, n, chars, 0, size - n);
+        System.arraycopy(origins, n, origins, 0, size - n);
+        System.arraycopy(originEnds, n, originEnds, 0, size - n);
+        size -= n;
+        committed -= n;
+    }
+
+    @Override
+    public int length() {
+        return size;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(chars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, size);
+    }
+}
@@ -0,0 +1,202 @@
+package vision.trademark.nlp;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Doubles indexed by id, either kept as they are or quantized to 8 or 16 bit codes into a table of levels.
+ * <p>
+ * Quantized values are clustered by a one dimensional k-means, which puts more levels where values are dense
+ * and keeps the largest error small where they are sparse. The levels themselves are kept at full precision.
+ */
+final class ScoreTable {
+    static final int EXACT = 64;
+
+    private static final int ITERATIONS = 20;
+
+    final int bits;
+    final DoubleBuffer levels;
+    /**
+     * The values themselves when {@link #bits} is {@link #EXACT}, otherwise the codes of their levels.
+     */
+    final Buffer codes;
+    private final DoubleBuffer values;
+    private final ShortBuffer shortCodes;
+    private final ByteBuffer byteCodes;
+
+    ScoreTable(int bits, DoubleBuffer levels, Buffer codes) {
+        this.bits = bits;
+        this.levels = levels;
+        this.codes = codes;
+        this.values = bits == EXACT ? (DoubleBuffer) codes : null;
+        this.shortCodes = bits == 16 ? (ShortBuffer) codes : null;
+        this.byteCodes = bits == 8 ? (ByteBuffer) codes : null;
+    }
+
+    double get(int i) {
+        if (values != null) {
+            return values.get(i);
+        }
+        if (shortCodes != null) {
+            return levels.get(shortCodes.get(i) & 0xffff);
+        }
+        return levels.get(byteCodes.get(i) & 0xff);
+    }
+
+    int size() {
+        return codes.capacity();
+    }
+
+    /**
+     * @return the bytes taken by codes of {@param bits} each
+     */
+    static long codeBytes(int bits, int size) {
+        return (long) size * bits / 8;
+    }
+
+    static ScoreTable exact(double[] values) {
+        return new ScoreTable(EXACT, DoubleBuffer.allocate(0), DoubleBuffer.wrap(values));
+    }
+
+    /**
+     * Quantizes {@param values} as {@param domain} maps them, so for example counts can be clustered by
+     * their logs, with each level holding {@param inverse} of its cluster's mean.
+     * Values that map to no finite number, such as a count of 0, keep a level of their own.
+     *
+     * @param bits 8 or 16, or {@link #EXACT} to keep the values as they are
+     */
+    static ScoreTable quantize(double[] values, int bits, DoubleUnaryOperator domain, DoubleUnaryOperator inverse) {
+        if (bits == EXACT) {
+            return exact(values);
+        }
+        if (bits != 8 && bits != 16) {
+            throw new IllegalArgumentException("Quantization must be to 8 or 16 bits: " + bits);
+        }
+        double[] mapped = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            mapped[i] = domain.applyAsDouble(values[i]);
+        }
+        double[] distinct = distinct(mapped);
+        int[] weights = new int[distinct.length];
+        for (double x : mapped) {
+            weights[Arrays.binarySearch(distinct, x)]++;
+        }
+        int special = 0;
+        for (double x : distinct) {
+            if (!Double.isFinite(x)) {
+                special++;
+            }
+        }
+
+        // non-finite values sort to the ends, and take the first levels
+        int maxLevels = (1 << bits) - special;
+        int from = distinct.length > 0 && distinct[0] == Double.NEGATIVE_INFINITY ? 1 : 0;
+        int to = from + distinct.length - special;
+        boolean exact = to - from <= maxLevels;
+        double[] centers = exact
+                ? Arrays.copyOfRange(distinct, from, to)
+                : cluster(Arrays.copyOfRange(distinct, from, to), Arrays.copyOfRange(weights, from, to), maxLevels);
+        double[] others = new double[special];
+        System.arraycopy(distinct, 0, others, 0, from);
+        System.arraycopy(distinct, to, others, from, distinct.length - to);
+
+        double[] levels = new double[special + centers.length];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = inverse.applyAsDouble(i < special ? others[i] : centers[i - special]);
+        }
+        int[] codes = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            codes[i] = Double.isFinite(mapped[i])
+                    ? special + nearest(centers, mapped[i])
+                    : Arrays.binarySearch(others, mapped[i]);
+            if (exact) {
+                // few enough values to keep every one of them as it was
+                levels[codes[i]] = values[i];
+            }
+        }
+
+        if (bits == 16) {
+            ShortBuffer buffer = ShortBuffer.allocate(values.length);
+            for (int code : codes) {
+                buffer.put((short) code);
+            }
+            return new ScoreTable(bits, DoubleBuffer.wrap(levels), ((Buffer) buffer).rewind());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(values.length);
+        for (int code : codes) {
+            buffer.put((byte) code);
+        }
+        return new ScoreTable(bits, DoubleBuffer.wrap(levels), ((Buffer) buffer).rewind());
+    }
+
+    /**
+     * Lloyd's algorithm over the sorted values {@param distinct}, weighted by how often each occurs,
+     * starting from levels spread evenly over their range.
+     *
+     * @return the centers of {@param k} clusters, in ascending order
+     */
+    private static double[] cluster(double[] distinct, int[] weights, int k) {
+        double min = distinct[0];
+        double max = distinct[distinct.length - 1];
+        double[] centers = new double[k];
+        for (int c = 0; c < k; c++) {
+            centers[c] = min + (max - min) * (c + 0.5) / k;
+        }
+        double[] sums = new double[k];
+        long[] counts = new long[k];
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            Arrays.fill(sums, 0);
+            Arrays.fill(counts, 0);
+            int c = 0;
+            for (int i = 0; i < distinct.length; i++) {
+                // values and centers both ascend, so the nearest center only ever moves forward
+                while (c + 1 < k && centers[c + 1] - distinct[i] <= distinct[i] - centers[c]) {
+                    c++;
+                }
+                sums[c] += distinct[i] * weights[i];
+                counts[c] += weights[i];
+            }
+            for (c = 0; c < k; c++) {
+                if (counts[c] > 0) {
+                    centers[c] = sums[c] / counts[c];
+                }
+            }
+            Arrays.sort(centers);
+        }
+        return centers;
+    }
+
+    private static int nearest(double[] centers, double x) {
+        int i = Arrays.binarySearch(centers, x);
+        if (i >= 0) {
+            return i;
+        }
+        int above = -i - 1;
+        if (above == 0) {
+            return 0;
+        }
+        if (above == centers.length) {
+            return centers.length - 1;
+        }
+        return centers[above] - x < x - centers[above - 1] ? above : above - 1;
+    }
+
+    /**
+     * @return the distinct values in {@param xs}, sorted with -Infinity first and Infinity and NaN last
+     */
+    private static double[] distinct(double[] xs) {
+        double[] sorted = xs.clone();
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || Double.compare(sorted[i], sorted[n - 1]) != 0) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, n);
+    }
+}
@@ -0,0 +1,58 @@
+package vision.trademark.nlp;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * One of the alternative segmentations from {@link WordSegmentation#segmentTopK(String, int)}, with its score.
+ */
+public final class ScoredSegmentation {
+    private final List<String> words;
+    private final double score;
+
+    ScoredSegmentation(List<String> words, double score) {
+        this.words = Collections.unmodifiableList(words);
+        this.score = score;
+    }
+
+    /**
+     * @return the words, along with the unmatched runs between them, as {@link WordSegmentation#segment(String)}
+     * returns them
+     */
+    public List<String> getWords() {
+        return words;
+    }
+
+    /**
+     * @return the sum of the log-probabilities and penalties along the path, higher is more likely
+     */
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ScoredSegmentation that = (ScoredSegmentation) o;
+        return Double.compare(that.score, score) == 0 &&
+                Objects.equals(words, that.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(words, score);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.NO_CLASS_NAME_STYLE)
+                .append("score", score)
+                .append("words", words)
+                .toString();
+    }
+}
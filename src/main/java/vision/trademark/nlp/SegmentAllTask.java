@@ -0,0 +1,41 @@
+package vision.trademark.nlp;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Segments a range of texts into the matching slots of a shared result array,
+ * halving the range until it is small enough to run on the current worker.
+ */
+class SegmentAllTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final WordSegmentation segmentation;
+    private final String[] texts;
+    private final List<String>[] results;
+    private final int from;
+    private final int to;
+    private final int threshold;
+
+    SegmentAllTask(WordSegmentation segmentation, String[] texts, List<String>[] results, int from, int to, int threshold) {
+        this.segmentation = segmentation;
+        this.texts = texts;
+        this.results = results;
+        this.from = from;
+        this.to = to;
+        this.threshold = threshold;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= threshold) {
+            for (int i = from; i < to; i++) {
+                results[i] = segmentation.segment(texts[i]);
+            }
+        } else {
+            int mid = (from + to) >>> 1;
+            invokeAll(new SegmentAllTask(segmentation, texts, results, from, mid, threshold),
+                    new SegmentAllTask(segmentation, texts, results, mid, to, threshold));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package vision.trademark.nlp;
+
+import java.util.Arrays;
+
+/**
+ * A reusable buffer of segment boundaries, filled by {@link WordSegmentation#segmentSpans(String, SegmentSpans)}.
+ * <p>
+ * Segment i covers {@code [start(i), end(i))} of the original, un-normalized text, so the chars normalization
+ * strips or folds never shift them. Offsets are packed into a single array, see {@link #offsets()}.
+ * The arrays grow to fit the longest text seen and are reused afterwards, so a buffer must not be shared between
+ * threads.
+ */
+public final class SegmentSpans {
+    private int size;
+    private int[] offsets = new int[32];
+    private double[] scores = new double[16];
+
+    /**
+     * @return the number of segments
+     */
+    public int size() {
+        return size;
+    }
+
+    public int start(int i) {
+        return offsets[2 * i];
+    }
+
+    /**
+     * @return the offset just past segment {@param i}
+     */
+    public int end(int i) {
+        return offsets[2 * i + 1];
+    }
+
+    /**
+     * @return the unigram log-probability of segment {@param i}, or NaN if it is an unmatched run rather than a word
+     */
+    public double score(int i) {
+        return scores[i];
+    }
+
+    public boolean isWord(int i) {
+        return !Double.isNaN(scores[i]);
+    }
+
+    /**
+     * @return the backing array, holding the start and end of segment i at {@code 2 * i} and {@code 2 * i + 1}.
+     * Only the first {@code 2 * size()} entries are meaningful.
+     */
+    public int[] offsets() {
+        return offsets;
+    }
+
+    /**
+     * @return the segments as substrings of {@param text}, which must be the text these spans were computed for
+     */
+    public String[] substrings(String text) {
+        String[] xs = new String[size];
+        for (int i = 0; i < size; i++) {
+            xs[i] = text.substring(start(i), end(i));
+        }
+        return xs;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void add(int start, int end, double score) {
+        if (size == scores.length) {
+            offsets = Arrays.copyOf(offsets, size * 4);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        offsets[2 * size] = start;
+        offsets[2 * size + 1] = end;
+        scores[size] = score;
+        size++;
+    }
+}
@@ -0,0 +1,180 @@
+package vision.trademark.nlp;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A bounded, concurrent cache of segmentations, keyed on the lexicon, normalized text and minLength.
+ * <p>
+ * Entries are spread over independently locked segments, each evicting by its own {@link Policy} once
+ * it exceeds its share of the limit. The limit is either a number of entries or an estimate of the bytes
+ * held, see {@link #byEntries(Policy, long)} and {@link #byWeight(Policy, long)}.
+ */
+public final class SegmentationCache {
+    public enum Policy {
+        /**
+         * Evicts the entry used least recently.
+         */
+        LRU,
+        /**
+         * Evicts the entry used least often, and of those the one used least recently.
+         */
+        LFU
+    }
+
+    private final BoundedCache<Key, List<String>> entries;
+    private final boolean weighed;
+
+    private SegmentationCache(Policy policy, long limit, boolean weighed) {
+        this.entries = new BoundedCache<>(policy, limit);
+        this.weighed = weighed;
+    }
+
+    /**
+     * @return a cache holding at most {@param maxEntries} segmentations
+     */
+    public static SegmentationCache byEntries(Policy policy, long maxEntries) {
+        return new SegmentationCache(policy, maxEntries, false);
+    }
+
+    /**
+     * @return a cache holding roughly at most {@param maxBytes} bytes of keys and segmentations
+     */
+    public static SegmentationCache byWeight(Policy policy, long maxBytes) {
+        return new SegmentationCache(policy, maxBytes, true);
+    }
+
+    List<String> get(Lexicon lexicon, String text, int minLength) {
+        return entries.get(new Key(lexicon, text, minLength));
+    }
+
+    /**
+     * @return the unmodifiable list now cached for the key, which callers should return in place of their own
+     */
+    List<String> put(Lexicon lexicon, String text, int minLength, List<String> segmentation) {
+        Key key = new Key(lexicon, text, minLength);
+        List<String> value = Collections.unmodifiableList(segmentation);
+        entries.put(key, value, weighed ? weigh(text, segmentation) : 1);
+        return value;
+    }
+
+    void remove(Lexicon lexicon, String text, int minLength) {
+        entries.remove(new Key(lexicon, text, minLength));
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public Stats stats() {
+        return entries.stats();
+    }
+
+    /**
+     * A rough estimate of the retained bytes: two per char, plus object and list overheads.
+     */
+    private static long weigh(String text, List<String> segmentation) {
+        long weight = 64 + 2L * text.length() + 16L * segmentation.size();
+        for (String x : segmentation) {
+            weight += 40 + 2L * x.length();
+        }
+        return weight;
+    }
+
+    /**
+     * A snapshot of a cache's counters.
+     */
+    public static final class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long size;
+        private final long weight;
+
+        Stats(long hitCount, long missCount, long evictionCount, long size, long weight) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.size = size;
+            this.weight = weight;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public double getHitRate() {
+            long requests = hitCount + missCount;
+            return requests == 0 ? 0 : (double) hitCount / requests;
+        }
+
+        /**
+         * @return the number of cached entries
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return the weight counted against the limit, which is {@link #getSize()} for caches bounded by entries
+         */
+        public long getWeight() {
+            return weight;
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.NO_CLASS_NAME_STYLE)
+                    .append("hitCount", hitCount)
+                    .append("missCount", missCount)
+                    .append("evictionCount", evictionCount)
+                    .append("size", size)
+                    .append("weight", weight)
+                    .toString();
+        }
+    }
+
+    /**
+     * Lexicons compare by identity, so a swapped in lexicon never sees segmentations made with the last one.
+     */
+    private static final class Key {
+        final Lexicon lexicon;
+        final String text;
+        final int minLength;
+        final int hash;
+
+        Key(Lexicon lexicon, String text, int minLength) {
+            this.lexicon = lexicon;
+            this.text = text;
+            this.minLength = minLength;
+            this.hash = 31 * (31 * System.identityHashCode(lexicon) + text.hashCode()) + minLength;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return lexicon == key.lexicon &&
+                    minLength == key.minLength &&
+                    Objects.equals(text, key.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package vision.trademark.nlp;
+
+/**
+ * Receives the {@link SegmentationMetrics} of every segmentation computed by a {@link WordSegmentation}.
+ * <p>
+ * Listeners are called on the segmenting thread, so they should be quick and thread-safe. Segmentations
+ * served from a {@link SegmentationCache} or streamed from a reader are not reported.
+ */
+@FunctionalInterface
+public interface SegmentationListener {
+    /**
+     * Records nothing. Segmentation with this listener skips the timing altogether.
+     */
+    SegmentationListener NONE = metrics -> {
+    };
+
+    /**
+     * @param metrics reused for the thread's next segmentation, so copy out anything kept past this call
+     */
+    void onSegment(SegmentationMetrics metrics);
+}
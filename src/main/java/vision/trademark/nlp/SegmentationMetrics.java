@@ -0,0 +1,86 @@
+package vision.trademark.nlp;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * What one call to {@link WordSegmentation#segment(String, int, SegmentationWorkspace)} did and how long each
+ * stage took: matching dictionary words, splitting them into connected components, and decoding each component.
+ */
+public final class SegmentationMetrics {
+    int textLength;
+    long matchNanos;
+    long componentNanos;
+    long decodeNanos;
+    int candidates;
+    int components;
+    int largestComponent;
+    int bigramLookups;
+    int bigramHits;
+
+    /**
+     * @return the length of the normalized text
+     */
+    public int getTextLength() {
+        return textLength;
+    }
+
+    public long getMatchNanos() {
+        return matchNanos;
+    }
+
+    public long getComponentNanos() {
+        return componentNanos;
+    }
+
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    /**
+     * @return the number of dictionary words found in the text
+     */
+    public int getCandidates() {
+        return candidates;
+    }
+
+    public int getComponents() {
+        return components;
+    }
+
+    /**
+     * @return the most candidates in any one component
+     */
+    public int getLargestComponent() {
+        return largestComponent;
+    }
+
+    /**
+     * @return the number of adjacent word pairs looked up in the bigram table
+     */
+    public int getBigramLookups() {
+        return bigramLookups;
+    }
+
+    /**
+     * @return the number of {@link #getBigramLookups()} that found a bigram, the rest backed off
+     */
+    public int getBigramHits() {
+        return bigramHits;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.NO_CLASS_NAME_STYLE)
+                .append("textLength", textLength)
+                .append("matchNanos", matchNanos)
+                .append("componentNanos", componentNanos)
+                .append("decodeNanos", decodeNanos)
+                .append("candidates", candidates)
+                .append("components", components)
+                .append("largestComponent", largestComponent)
+                .append("bigramLookups", bigramLookups)
+                .append("bigramHits", bigramHits)
+                .toString();
+    }
+}
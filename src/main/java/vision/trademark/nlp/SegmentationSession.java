@@ -0,0 +1,195 @@
+package vision.trademark.nlp;
+
+import java.util.List;
+
+/**
+ * Segments text that changes a little at a time, such as a search box segmented on every keystroke, reusing
+ * what it can from the text segmented last.
+ * <p>
+ * The words found from a start depend only on the longest word's worth of text from there, and since the gap
+ * penalty is measured within each component, a component's best path depends only on its own text. So after an
+ * edit only the starts within a longest word before the change, and those inside it, are matched again, and
+ * only the components those candidates fall in are decoded again. Everything else is copied across, moved by
+ * however much the edit lengthened or shortened the text. The segmentation is the one
+ * {@link WordSegmentation#segment(String)} returns for the whole text.
+ * <p>
+ * A session keeps its own state, so it must not be shared between threads.
+ */
+public class SegmentationSession {
+    private final WordSegmentation segmentation;
+    private final int minLength;
+    private final ComponentDecoder decoder = new ComponentDecoder();
+
+    private String raw = "";
+    private String text = "";
+    private Lattice lattice = new Lattice();
+    private Lattice previous = new Lattice();
+    private List<String> segments;
+
+    SegmentationSession(WordSegmentation segmentation, int minLength) {
+        this.segmentation = segmentation;
+        this.minLength = minLength;
+        this.segments = segmentation.segments(text, lattice);
+    }
+
+    /**
+     * @return the text as last given, before normalization
+     */
+    public String text() {
+        return raw;
+    }
+
+    /**
+     * @return the segmentation of the text as last given
+     */
+    public List<String> segments() {
+        return segments;
+    }
+
+    /**
+     * Replaces the text with {@param raw}, typically the old text with a few chars typed or deleted.
+     *
+     * @return the segmentation of the new text
+     */
+    public List<String> update(String raw) {
+        String text = segmentation.normalizer().normalize(raw);
+        this.raw = raw;
+        Lexicon lexicon = segmentation.lexicon();
+        if (text.equals(this.text) && lexicon == lattice.lexicon) {
+            return segments;
+        }
+        if (lexicon != lattice.lexicon) {
+            // nothing matched against another lexicon carries over
+            this.text = "";
+            lattice.clear();
+        }
+        resegment(lexicon, text);
+        return segments;
+    }
+
+    /**
+     * Appends {@param chars} to the text.
+     *
+     * @return the segmentation of the new text
+     */
+    public List<String> append(CharSequence chars) {
+        return update(raw + chars);
+    }
+
+    /**
+     * Replaces chars {@code [start, end)} of the text with {@param replacement}.
+     *
+     * @return the segmentation of the new text
+     */
+    public List<String> edit(int start, int end, CharSequence replacement) {
+        return update(raw.substring(0, start) + replacement + raw.substring(end));
+    }
+
+    private void resegment(Lexicon lexicon, String text) {
+        String before = this.text;
+        int prefix = 0;
+        int common = Math.min(before.length(), text.length());
+        while (prefix < common && before.charAt(prefix) == text.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < common - prefix
+                && before.charAt(before.length() - 1 - suffix) == text.charAt(text.length() - 1 - suffix)) {
+            suffix++;
+        }
+        int shift = text.length() - before.length();
+
+        // starts whose longest word's worth of text ends before the edit, and starts in the unchanged suffix,
+        // find the same words as before
+        int lookahead = Math.max(lexicon.longestWord, minLength);
+        int from = Math.max(0, prefix - lookahead + 1);
+        int to = text.length() - suffix;
+
+        Lattice last = this.lattice;
+        Lattice next = this.previous;
+        next.clear();
+        next.lexicon = lexicon;
+        int head = firstStartingAt(last, from);
+        int tail = firstStartingAt(last, before.length() - suffix);
+        next.addAll(last, 0, head, 0);
+        for (int start = from; start < to && start + minLength <= text.length(); start++) {
+            int limit = segmentation.matchLimit(text, start, Math.min(text.length(), start + lookahead));
+            if (start + minLength <= limit) {
+                segmentation.meaningfulWordsAt(minLength, text, start, limit, next);
+            }
+        }
+        int matched = next.size;
+        int offset = matched - tail;
+        next.addAll(last, tail, last.size, shift);
+
+        // components before the new candidates are kept, unless the last of them reaches into one
+        int kept = 0;
+        while (kept < last.components && last.componentTo[kept] <= head) {
+            kept++;
+        }
+        if (kept > 0 && head < next.size && next.starts[head] <= last.componentEnds[kept - 1]) {
+            kept--;
+        }
+        for (int c = 0; c < kept; c++) {
+            next.addComponent(last, c, 0, 0);
+        }
+
+        // the rest are split off again, until one starts where one after the edit did, from which point on
+        // they are all as they were
+        int reused = last.components;
+        while (reused > 0 && last.componentFrom[reused - 1] >= tail) {
+            reused--;
+        }
+        int componentFrom = kept > 0 ? next.componentTo[kept - 1] : 0;
+        int end = -1;
+        for (int i = componentFrom; i < next.size; i++) {
+            if (i > componentFrom && next.starts[i] > end) {
+                decodeComponent(next, componentFrom, i, end, text);
+                componentFrom = i;
+            }
+            if (i == componentFrom && i >= matched) {
+                while (reused < last.components && last.componentFrom[reused] + offset < i) {
+                    reused++;
+                }
+                if (reused < last.components && last.componentFrom[reused] + offset == i) {
+                    for (int c = reused; c < last.components; c++) {
+                        next.addComponent(last, c, offset, shift);
+                    }
+                    componentFrom = next.size;
+                    break;
+                }
+            }
+            end = Math.max(end, next.ends[i]);
+        }
+        if (next.size > componentFrom) {
+            decodeComponent(next, componentFrom, next.size, end, text);
+        }
+
+        this.previous = last;
+        this.lattice = next;
+        this.text = text;
+        this.segments = segmentation.segments(text, next);
+    }
+
+    private void decodeComponent(Lattice lattice, int from, int to, int end, String text) {
+        lattice.addComponent(from, to, end);
+        segmentation.optComponent(lattice, lattice.components - 1, decoder, text, minLength);
+    }
+
+    /**
+     * @return the index of the first candidate of {@param lattice} starting at or after {@param position}
+     */
+    private static int firstStartingAt(Lattice lattice, int position) {
+        int low = 0;
+        int high = lattice.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lattice.starts[mid] < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,24 @@
+package vision.trademark.nlp;
+
+/**
+ * Scratch space for {@link WordSegmentation#segment(String, int, SegmentationWorkspace)}: the normalized text,
+ * the candidate lattice and the decoder's arrays, which grow to fit the largest text seen and are reused afterwards.
+ * <p>
+ * A workspace is not thread-safe; give each thread or call site its own. {@link WordSegmentation#segment(String)}
+ * already keeps one per thread.
+ */
+public final class SegmentationWorkspace {
+    /**
+     * Workspaces that grew past this many candidates are not kept by {@link WordSegmentation}'s per-thread cache.
+     */
+    static final int RETAINED_CANDIDATES = 1 << 16;
+
+    final NormalizedText normalized = new NormalizedText();
+    final Lattice lattice = new Lattice();
+    final ComponentDecoder decoder = new ComponentDecoder();
+    final SegmentationMetrics metrics = new SegmentationMetrics();
+
+    boolean isOversized() {
+        return lattice.capacity() > RETAINED_CANDIDATES;
+    }
+}
@@ -0,0 +1,23 @@
+package vision.trademark.nlp;
+
+/**
+ * Chars that are never part of a dictionary word, so runs of them go straight to the output as unmatched
+ * text instead of being matched against the dictionary at every offset. Useful for serial numbers and the
+ * like, which otherwise fill the lattice with short spurious matches.
+ */
+@FunctionalInterface
+public interface SkippedChars {
+    /**
+     * Skips nothing, matching the dictionary everywhere.
+     */
+    SkippedChars NONE = c -> false;
+
+    SkippedChars DIGITS = Character::isDigit;
+
+    /**
+     * Skips digits, punctuation, symbols and whitespace.
+     */
+    SkippedChars NON_LETTERS = c -> !Character.isLetter(c);
+
+    boolean isSkipped(char c);
+}
@@ -0,0 +1,122 @@
+package vision.trademark.nlp;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Segments a {@link Reader} the way {@link WordSegmentation#segment(String)} segments the whole input at once.
+ * <p>
+ * Input is normalized a chunk at a time and matched one start at a time, as soon as the longest dictionary
+ * word past that start has been read. Components never span an offset past the furthest end seen so far, so a
+ * component is complete, and can be decoded and emitted, once matching moves past its end.
+ * Everything before the last emitted word is then dropped from the buffer.
+ */
+class StreamingSegmenter {
+    private final WordSegmentation segmentation;
+    private final Lexicon lexicon;
+    private final int minLength;
+    private final Consumer<String> out;
+    private final int lookahead;
+
+    private final Lattice lattice = new Lattice();
+    private final ComponentDecoder decoder = new ComponentDecoder();
+
+    /**
+     * Normalized text from the first position not yet dropped on.
+     */
+    private final NormalizedText text = new NormalizedText();
+
+    /**
+     * The next start to match, the first position not yet emitted, and the furthest end of the open component.
+     */
+    private int next;
+    private int emitted;
+    private int end = -1;
+
+    StreamingSegmenter(WordSegmentation segmentation, int minLength, Consumer<String> out) {
+        this.segmentation = segmentation;
+        this.lexicon = segmentation.lexicon();
+        this.minLength = minLength;
+        this.out = out;
+        this.lookahead = Math.max(lexicon.longestWord, minLength);
+        lattice.lexicon = lexicon;
+    }
+
+    void run(Reader in) throws IOException {
+        TextNormalizer normalizer = segmentation.normalizer();
+        char[] chunk = new char[4096];
+        CharBuffer input = CharBuffer.wrap(chunk);
+        int pending = 0;
+        int n;
+        while ((n = in.read(chunk, pending, chunk.length - pending)) != -1) {
+            int available = pending + n;
+            // a char that may combine with the next chunk is held back until it arrives
+            int stop = normalizer.append(input, 0, available, false, text);
+            pending = available - stop;
+            System.arraycopy(chunk, stop, chunk, 0, pending);
+            if (pending == chunk.length) {
+                chunk = Arrays.copyOf(chunk, chunk.length * 2);
+                input = CharBuffer.wrap(chunk);
+            }
+            match(false);
+        }
+        normalizer.append(input, 0, pending, true, text);
+        text.finish();
+        match(true);
+        if (lattice.size > 0) {
+            emitComponent();
+        }
+        if (emitted < text.size) {
+            out.accept(new String(text.chars, emitted, text.size - emitted));
+        }
+    }
+
+    private void match(boolean finished) {
+        while (finished ? next + minLength <= text.committed : next + lookahead <= text.committed) {
+            if (lattice.size > 0 && next > end) {
+                emitComponent();
+            }
+            int size = lattice.size;
+            int limit = segmentation.matchLimit(text, next, Math.min(text.committed, next + lookahead));
+            if (next + minLength <= limit) {
+                segmentation.meaningfulWordsAt(minLength, text, next, limit, lattice);
+            }
+            for (int i = size; i < lattice.size; i++) {
+                end = Math.max(end, lattice.ends[i]);
+            }
+            next++;
+        }
+    }
+
+    private void emitComponent() {
+        lattice.addComponent(0, lattice.size, end);
+        segmentation.optComponent(lattice, 0, decoder, text, minLength);
+
+        int start = lattice.pathStart(0);
+        if (start > emitted) {
+            out.accept(new String(text.chars, emitted, start - emitted));
+        }
+        for (int i = lattice.pathFrom[0]; i < lattice.pathTo[0]; i++) {
+            out.accept(lexicon.trie.word(lattice.wordIds[lattice.path[i]]));
+        }
+        emitted = end + 1;
+        lattice.clear();
+        compact();
+    }
+
+    /**
+     * Drops the emitted prefix of the buffer, which is only safe while the lattice is empty.
+     */
+    private void compact() {
+        if (emitted < text.chars.length / 2) {
+            return;
+        }
+        text.drop(emitted);
+        next -= emitted;
+        end -= emitted;
+        emitted = 0;
+    }
+}
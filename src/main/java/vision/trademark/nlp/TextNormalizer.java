@@ -0,0 +1,189 @@
+package vision.trademark.nlp;
+
+import java.text.Normalizer;
+import java.util.function.IntPredicate;
+
+/**
+ * Prepares text for matching against the dictionaries in a single pass: lowercases it, trims whitespace from
+ * both ends and strips chars such as apostrophes, remembering for every char the range of the input it came from.
+ * <p>
+ * Trimming happens before stripping, so whitespace next to a stripped char at either end is kept. Lowercasing maps
+ * each code point on its own, independent of the default locale.
+ * <p>
+ * Optionally, compatibility forms such as full-width letters and ligatures are folded to their plain equivalents
+ * (NFKC), and diacritics are removed, so marks written in other scripts or with accents can match the
+ * dictionaries. ASCII text takes a fast path that needs neither.
+ */
+public final class TextNormalizer {
+    public static final IntPredicate APOSTROPHES = c -> c == '\'';
+
+    /**
+     * Every Unicode punctuation char: connectors, dashes, brackets, quotes and the rest.
+     */
+    public static final IntPredicate PUNCTUATION = c -> {
+        switch (Character.getType(c)) {
+            case Character.CONNECTOR_PUNCTUATION:
+            case Character.DASH_PUNCTUATION:
+            case Character.START_PUNCTUATION:
+            case Character.END_PUNCTUATION:
+            case Character.INITIAL_QUOTE_PUNCTUATION:
+            case Character.FINAL_QUOTE_PUNCTUATION:
+            case Character.OTHER_PUNCTUATION:
+                return true;
+            default:
+                return false;
+        }
+    };
+
+    /**
+     * Lowercases, trims and strips apostrophes, as segmentation always has.
+     */
+    public static final TextNormalizer DEFAULT = builder().build();
+
+    private final boolean compatibility;
+    private final boolean foldDiacritics;
+    private final IntPredicate stripped;
+    private final boolean[] asciiStripped = new boolean[128];
+
+    private TextNormalizer(Builder builder) {
+        this.compatibility = builder.compatibility;
+        this.foldDiacritics = builder.foldDiacritics;
+        this.stripped = builder.stripped;
+        for (int c = 0; c < asciiStripped.length; c++) {
+            asciiStripped[c] = stripped.test(c);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public String normalize(String text) {
+        NormalizedText out = new NormalizedText();
+        append(text, 0, text.length(), true, out);
+        out.finish();
+        return out.toString();
+    }
+
+    /**
+     * Appends the normalization of {@code text[from, to)} to {@param out}. Unless {@param last}, a char that may
+     * combine with what follows is left for the next call, along with everything after it.
+     *
+     * @return the offset normalization stopped at, which is {@param to} if everything was consumed
+     */
+    int append(CharSequence text, int from, int to, boolean last, NormalizedText out) {
+        boolean folding = compatibility || foldDiacritics;
+        int i = from;
+        while (i < to) {
+            char c = text.charAt(i);
+            if (c < 128 && (!folding || (i + 1 < to ? text.charAt(i + 1) < 128 : last))) {
+                // 'A' to 'Z' are the only chars where both differences are non-negative
+                int upper = ~((c - 'A') | ('Z' - c)) >>> 31;
+                char x = (char) (c + (upper << 5));
+                emit(x, asciiStripped[x], i, i + 1, out);
+                i++;
+                continue;
+            }
+            int end = i + Character.charCount(Character.codePointAt(text, i));
+            if (Character.isHighSurrogate(c) && end == i + 1 && i + 1 == to && !last) {
+                return i;
+            }
+            if (!folding) {
+                emit(Character.toLowerCase(Character.codePointAt(text, i)), i, end, out);
+                i = end;
+                continue;
+            }
+            while (end < to && isMark(Character.codePointAt(text, end))) {
+                end += Character.charCount(Character.codePointAt(text, end));
+            }
+            if (end == to && !last) {
+                return i;
+            }
+            String cluster = text.subSequence(i, end).toString();
+            if (compatibility) {
+                cluster = Normalizer.normalize(cluster, Normalizer.Form.NFKC);
+            }
+            if (foldDiacritics) {
+                cluster = Normalizer.normalize(cluster, Normalizer.Form.NFD);
+            }
+            for (int k = 0; k < cluster.length(); ) {
+                int x = cluster.codePointAt(k);
+                if (!foldDiacritics || Character.getType(x) != Character.NON_SPACING_MARK) {
+                    emit(Character.toLowerCase(x), i, end, out);
+                }
+                k += Character.charCount(x);
+            }
+            i = end;
+        }
+        return i;
+    }
+
+    private void emit(int codePoint, int origin, int originEnd, NormalizedText out) {
+        if (Character.isBmpCodePoint(codePoint)) {
+            emit((char) codePoint, stripped.test(codePoint), origin, originEnd, out);
+        } else {
+            boolean strip = stripped.test(codePoint);
+            emit(Character.highSurrogate(codePoint), strip, origin, originEnd, out);
+            emit(Character.lowSurrogate(codePoint), strip, origin, originEnd, out);
+        }
+    }
+
+    private static void emit(char x, boolean strip, int origin, int originEnd, NormalizedText out) {
+        if (x <= ' ') {
+            if (out.started) {
+                out.add(x, origin, originEnd);
+            }
+            return;
+        }
+        out.started = true;
+        if (!strip) {
+            out.add(x, origin, originEnd);
+        }
+        out.committed = out.size;
+    }
+
+    private static boolean isMark(int codePoint) {
+        int type = Character.getType(codePoint);
+        return type == Character.NON_SPACING_MARK
+                || type == Character.COMBINING_SPACING_MARK
+                || type == Character.ENCLOSING_MARK;
+    }
+
+    public static final class Builder {
+        private boolean compatibility;
+        private boolean foldDiacritics;
+        private IntPredicate stripped = APOSTROPHES;
+
+        private Builder() {
+        }
+
+        /**
+         * Folds compatibility forms to their canonical equivalents, e.g. full-width letters to ASCII and the ligature U+FB01 to "fi".
+         */
+        public Builder compatibility(boolean compatibility) {
+            this.compatibility = compatibility;
+            return this;
+        }
+
+        /**
+         * Removes accents and other combining marks, so an e with an acute accent becomes a plain e.
+         */
+        public Builder foldDiacritics(boolean foldDiacritics) {
+            this.foldDiacritics = foldDiacritics;
+            return this;
+        }
+
+        /**
+         * @param stripped the code points to remove after lowercasing, {@link #APOSTROPHES} by default.
+         *                 Whitespace is only ever trimmed.
+         */
+        public Builder strip(IntPredicate stripped) {
+            this.stripped = stripped;
+            return this;
+        }
+
+        public TextNormalizer build() {
+            return new TextNormalizer(this);
+        }
+    }
+}
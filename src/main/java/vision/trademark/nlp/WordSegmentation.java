@@ -1,395 +1,568 @@
 package vision.trademark.nlp;
 
-import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.tuple.Pair;
-import org.jgrapht.DirectedGraph;
-import org.jgrapht.alg.ConnectivityInspector;
-import org.jgrapht.graph.DefaultDirectedGraph;
-import org.jgrapht.graph.DefaultEdge;
-
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.zip.GZIPInputStream;
-
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Splits text without spaces into the most likely sequence of words.
+ * <p>
+ * Instances are thread-safe. Each call works in a {@link SegmentationWorkspace}, either the one kept for the
+ * calling thread or one supplied by the caller, so steady state segmentation allocates little beyond the
+ * returned list.
+ * <p>
+ * The lexicon can be replaced while in use, see {@link #reload(Callable, Executor)}. Each call reads it once
+ * and segments against that snapshot throughout, so calls never need a lock and never see a mix of two lexicons.
+ */
 public class WordSegmentation {
-    private static final double TOTAL = 1024908267229.0;
+    /**
+     * The minLength the command-line tools use unless told otherwise, as the tests and benchmarks do.
+     */
+    static final int DEFAULT_MIN_LENGTH = 2;
 
-    private final Map<String, Long> bigramCounts;
-    private final Map<String, Long> fullUnigramCounts;
-    private final Map<String, List<String>> ngramTree;
+    private volatile Lexicon lexicon;
     private final int minLength;
+    private final SegmentationCache cache;
+    private final ComponentCache componentCache;
+    private final SegmentationListener listener;
+    private final SkippedChars skipped;
+    private final TextNormalizer normalizer;
+    private final ThreadLocal<SegmentationWorkspace> workspaces = ThreadLocal.withInitial(SegmentationWorkspace::new);
 
     /**
-     * To avoid paying the cost of calculating ngramTree for each segmentation,
-     * we only allow a single minLength for all segments.
+     * @param minLength the shortest dictionary word {@link #segment(String)} will match. The dictionary
+     *                  itself is independent of it, so other lengths can be used per call with
+     *                  {@link #segment(String, int)}.
      */
     public WordSegmentation(int minLength) {
-        this.bigramCounts = loadWordList("/bigrams.txt.gz");
-        this.fullUnigramCounts = loadWordList("/unigrams.txt.original.gz");
+        this(Lexicon.defaultLexicon(), minLength);
+    }
 
-        this.ngramTree = ngramTree(minLength, loadWordList("/unigrams.txt.gz"));
-        this.minLength = minLength;
+    /**
+     * @param lexicon   the dictionaries to segment against, which may be shared with other instances
+     * @param minLength see {@link #WordSegmentation(int)}
+     */
+    public WordSegmentation(Lexicon lexicon, int minLength) {
+        this(lexicon, minLength, null);
     }
 
+    /**
+     * @param cache remembers segmentations by normalized text, in which case the lists returned are shared
+     *              and unmodifiable. May be null, and may be shared with other instances skipping the same
+     *              chars.
+     */
+    public WordSegmentation(Lexicon lexicon, int minLength, SegmentationCache cache) {
+        this(lexicon, minLength, cache, SegmentationListener.NONE);
+    }
 
-    public List<String> segment(String text) {
-        text = text == null ? "" : text.toLowerCase().trim().replaceAll("'", "");
+    /**
+     * @param listener receives the metrics of every segmentation this instance computes, or null for none
+     */
+    public WordSegmentation(Lexicon lexicon, int minLength, SegmentationCache cache, SegmentationListener listener) {
+        this(builder(minLength).lexicon(lexicon).cache(cache).listener(listener));
+    }
 
-        List<ScorePosition<String>> meaningfulWords = meaningfulWords(minLength, text, ngramTree);
+    private WordSegmentation(Builder builder) {
+        this.lexicon = builder.lexicon == null ? Lexicon.defaultLexicon() : builder.lexicon;
+        this.minLength = builder.minLength;
+        this.cache = builder.cache;
+        this.componentCache = builder.componentCache;
+        this.listener = builder.listener == null ? SegmentationListener.NONE : builder.listener;
+        this.skipped = builder.skipped == null ? SkippedChars.NONE : builder.skipped;
+        this.normalizer = builder.normalizer == null ? TextNormalizer.DEFAULT : builder.normalizer;
+    }
 
-        List<Set<ScorePosition<String>>> sets = connectedSets(meaningfulWords);
+    /**
+     * @param minLength see {@link #WordSegmentation(int)}
+     * @return a builder for segmenters with options beyond the constructors', defaulting to the same
+     */
+    public static Builder builder(int minLength) {
+        return new Builder(minLength);
+    }
 
-        List<Position<List<String>>> postComponents = new ArrayList<>();
-        for (Set<ScorePosition<String>> x : sets) {
-            postComponents.add(optComponent(x));
+    /**
+     * Swaps in {@param lexicon} for every call from now on, and clears the caches.
+     * Calls already running finish against the lexicon they started with, and cache nothing once it is replaced,
+     * as entries for it could never be hit again but would keep it from being collected.
+     */
+    public void setLexicon(Lexicon lexicon) {
+        this.lexicon = lexicon;
+        if (cache != null) {
+            cache.clear();
         }
-
-        Set<Integer> meaningfulIndices = new HashSet<>();
-        for (Position<List<String>> x : postComponents) {
-            meaningfulIndices.addAll(IntStream.range(x.getStart(), x.getEnd() + 1).boxed().collect(Collectors.toList()));
+        if (componentCache != null) {
+            componentCache.clear();
         }
+    }
 
-        List<Pair<Integer, Integer>> nonMeaningfulRanges = missingSegments(text, meaningfulIndices);
+    /**
+     * Builds a lexicon from {@param source} on {@param executor} and swaps it in once it is complete, leaving
+     * the current one in use until then, or for good if building it fails. For example
+     * {@code reload(() -> Lexicon.load(unigrams, counts, bigrams), executor)} picks up edited dictionary files.
+     *
+     * @return the new lexicon, once it is in use
+     */
+    public CompletableFuture<Lexicon> reload(Callable<Lexicon> source, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return source.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor).thenApply(x -> {
+            setLexicon(x);
+            return x;
+        });
+    }
 
-        List<Pair<Integer, Integer>> overallPosList = new ArrayList<>();
-        overallPosList.addAll(nonMeaningfulRanges);
+    public List<String> segment(String text) {
+        return segment(text, minLength);
+    }
 
-        Map<Pair<Integer, Integer>, List<String>> meaningfulDic = new HashMap<>();
-        for (Position<List<String>> x : postComponents) {
-            Pair<Integer, Integer> p = Pair.of(x.getStart(), x.getEnd());
-            overallPosList.add(p);
-            meaningfulDic.put(p, x.getNgram());
+    public List<String> segment(String text, int minLength) {
+        SegmentationWorkspace workspace = workspaces.get();
+        List<String> segments = segment(text, minLength, workspace);
+        if (workspace.isOversized()) {
+            workspaces.remove();
         }
-        overallPosList.sort(Comparator.comparing(Pair::getLeft));
+        return segments;
+    }
 
-        List<String> returnList = new ArrayList<>();
-        for (Pair<Integer, Integer> x : overallPosList) {
-            if (meaningfulDic.containsKey(x)) {
-                returnList.addAll(meaningfulDic.get(x));
-            } else {
-                Integer left = x.getLeft();
-                Integer right = x.getRight();
-                String substring = text.substring(left, right + 1);
-                returnList.add(substring);
-            }
+    /**
+     * @return a session segmenting text as it is typed, see {@link SegmentationSession}
+     */
+    public SegmentationSession session() {
+        return session(minLength);
+    }
+
+    public SegmentationSession session(int minLength) {
+        if (minLength < 1) {
+            throw new IllegalArgumentException("minLength must be positive: " + minLength);
         }
-        return returnList;
+        return new SegmentationSession(this, minLength);
     }
 
-    private List<ScorePosition<String>> meaningfulWords(int minLength, String text, Map<String, List<String>> ngramTree) {
-        List<ScorePosition<String>> meaningfulWords = new ArrayList<>();
+    /**
+     * Segments everything read from {@param in}, passing each word to {@param out} as soon as it is decided.
+     * <p>
+     * The words are the ones {@link #segment(String)} returns for the whole input. Only a lookahead the length
+     * of the longest dictionary word is buffered, plus the connected component or unmatched run being decided.
+     */
+    public void segment(Reader in, Consumer<String> out) throws IOException {
+        segment(in, minLength, out);
+    }
 
-        List<SuffixedPosition> cuts = cuts(minLength, text);
-        for (int i = cuts.size() - 1; i >= 0; i--) {
-            SuffixedPosition x = cuts.get(i);
-            List<String> words = ngramTree.get(x.getPrefix());
-            if (words != null) {
-                int start = x.getStart();
-                String recovered = x.getPrefix() + x.getSuffix();
-                char c = x.getPrefix().charAt(0);
-                if ('a' == c) {
-                    meaningfulWords.add(new ScorePosition<>("a", getUnigramScore("a"), start, start + "a".length() - 1));
-                }
+    public void segment(Reader in, int minLength, Consumer<String> out) throws IOException {
+        if (minLength < 1) {
+            throw new IllegalArgumentException("minLength must be positive: " + minLength);
+        }
+        new StreamingSegmenter(this, minLength, out).run(in);
+    }
 
-                for (String word : words) {
-                    if (recovered.contains(word)) {
-                        if (text.substring(start, start + word.length()).equals(word)) {
-                            meaningfulWords.add(new ScorePosition<>(word, getUnigramScore(word), start, start + word.length() - 1));
-                        }
-                    }
-                }
+    /**
+     * Segments every text in {@param texts} in parallel on the common fork-join pool.
+     *
+     * @return the segmentations in the iteration order of {@param texts}
+     */
+    public List<List<String>> segmentAll(Collection<String> texts) {
+        return segmentAll(texts, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Segments every text in {@param texts} in parallel on {@param pool}, sharing this instance's lexicon.
+     *
+     * @return the segmentations in the iteration order of {@param texts}
+     */
+    public List<List<String>> segmentAll(Collection<String> texts, ForkJoinPool pool) {
+        String[] xs = texts.toArray(new String[0]);
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        List<String>[] results = new List[xs.length];
+        // enough tasks to balance uneven texts across workers, without splitting below a handful per task
+        int threshold = Math.max(16, xs.length / (pool.getParallelism() * 8));
+        pool.invoke(new SegmentAllTask(this, xs, results, 0, xs.length, threshold));
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Segments {@param text} using the buffers of {@param workspace}, which must not be in use by another thread.
+     */
+    public List<String> segment(String text, int minLength, SegmentationWorkspace workspace) {
+        if (minLength < 1) {
+            throw new IllegalArgumentException("minLength must be positive: " + minLength);
+        }
+        text = normalize(text, workspace.normalized);
+        Lexicon lexicon = this.lexicon;
+        if (cache != null) {
+            List<String> cached = cache.get(lexicon, text, minLength);
+            if (cached != null) {
+                return cached;
             }
         }
-        meaningfulWords.sort(Comparator.comparingInt(Position::getStart));
-        return meaningfulWords;
+
+        decode(lexicon, minLength, text, workspace);
+        List<String> segments = segments(text, workspace.lattice);
+        if (cache == null) {
+            return segments;
+        }
+        if (this.lexicon != lexicon) {
+            return Collections.unmodifiableList(segments);
+        }
+        List<String> cached = cache.put(lexicon, text, minLength, segments);
+        if (this.lexicon != lexicon) {
+            // replaced between the check and the put, which may have come after the caches were cleared
+            cache.remove(lexicon, text, minLength);
+        }
+        return cached;
     }
 
     /**
-     * Places {@param meaningfulWords} in a graph (connected by positions), returning all connected subgraphs as sets.
+     * @return the {@param k} most likely segmentations of {@param text}, best first, with their scores
      */
-    private List<Set<ScorePosition<String>>> connectedSets(List<ScorePosition<String>> meaningfulWords) {
-        DirectedGraph<ScorePosition<String>, DefaultEdge> graph = new DefaultDirectedGraph<>(DefaultEdge.class);
-        for (ScorePosition<String> x : meaningfulWords) {
-            graph.addVertex(x);
-        }
-        Set<Set<Position<String>>> seen = new HashSet<>();
-        for (ScorePosition<String> l : meaningfulWords) {
-            for (ScorePosition<String> r : meaningfulWords) {
-                if (!l.equals(r) && !isNotIntersecting(l, r)) {
-                    Set<Position<String>> check = new HashSet<>();
-                    check.add(l);
-                    check.add(r);
-                    if (!seen.contains(check)) {
-                        graph.addEdge(l, r);
-                        seen.add(check);
-                    }
-                }
-            }
+    public List<ScoredSegmentation> segmentTopK(String text, int k) {
+        return segmentTopK(text, minLength, k);
+    }
+
+    /**
+     * Unlike {@link #segment(String, int)}, which keeps the original decoder's choices, alternatives are ranked
+     * by their score alone, so the first need not be the segmentation {@link #segment(String, int)} returns.
+     */
+    public List<ScoredSegmentation> segmentTopK(String text, int minLength, int k) {
+        if (minLength < 1) {
+            throw new IllegalArgumentException("minLength must be positive: " + minLength);
         }
-        return new ConnectivityInspector<>(graph).connectedSets();
-    }
-
-    private List<Pair<Integer, Integer>> missingSegments(String text, Set<Integer> meaningfulIndices) {
-        ArrayList<Pair<Integer, Integer>> pairs = new ArrayList<>();
-
-        List<Integer> current = new ArrayList<>();
-        for (int i = 0; i < text.length(); i++) {
-            if (!meaningfulIndices.contains(i)) {
-                if (current.isEmpty()) {
-                    current.add(i);
-                } else {
-                    if (current.get(current.size() - 1) == i - 1) {
-                        current.add(i);
-                    } else {
-                        pairs.add(Pair.of(current.get(0), current.get(current.size() - 1)));
-                        current = new ArrayList<>();
-                        current.add(i);
-                    }
-                }
-            }
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive: " + k);
         }
-        if (!current.isEmpty()) {
-            pairs.add(Pair.of(current.get(0), current.get(current.size() - 1)));
+        SegmentationWorkspace workspace = workspaces.get();
+        text = normalize(text, workspace.normalized);
+        Lattice lattice = workspace.lattice;
+        lattice.clear();
+        lattice.lexicon = lexicon;
+        meaningfulWords(minLength, text, lattice);
+        connectedSets(lattice);
+        List<ScoredSegmentation> segmentations = new KBestDecoder(lattice.lexicon, k).decode(text, lattice);
+        if (workspace.isOversized()) {
+            workspaces.remove();
         }
-        return pairs;
+        return segmentations;
     }
 
-    private ScorePosition<List<String>> optComponent(Set<ScorePosition<String>> in) {
-        List<ScorePosition<String>> meaningfulWords = in.stream()
-                .sorted(Comparator.comparing(Position::getEnd))
-                .collect(Collectors.toList());
+    /**
+     * Segments {@param text} into {@param spans}, as offsets into {@param text} itself rather than substrings
+     * of its normalized form. The segments are the ones {@link #segment(String)} returns.
+     *
+     * @return {@param spans}
+     */
+    public SegmentSpans segmentSpans(String text, SegmentSpans spans) {
+        return segmentSpans(text, minLength, spans);
+    }
 
-        List<Pair<ScorePosition<String>, MaybeRange>> lst = new CircularList<>();
-        for (ScorePosition<String> p1 : meaningfulWords) {
-            int pos = 0;
-            ArrayList<Integer> prevList = new ArrayList<>();
-            for (ScorePosition<String> p2 : meaningfulWords) {
-                if (isNotIntersecting(p1, p2) && p1.getStart() == p2.getEnd() + 1) {
-                    prevList.add(pos + 1);
-                }
-                pos++;
-            }
-            if (!prevList.isEmpty()) {
-                Collections.reverse(prevList);
+    public SegmentSpans segmentSpans(String text, int minLength, SegmentSpans spans) {
+        if (minLength < 1) {
+            throw new IllegalArgumentException("minLength must be positive: " + minLength);
+        }
+        SegmentationWorkspace workspace = workspaces.get();
+        NormalizedText normalized = workspace.normalized;
+        decode(lexicon, minLength, normalize(text, normalized), workspace);
+        Lattice lattice = workspace.lattice;
+        spans.clear();
+        int covered = 0;
+        for (int c = 0; c < lattice.components; c++) {
+            int start = lattice.pathStart(c);
+            if (start > covered) {
+                spans.add(normalized.origins[covered], normalized.originEnds[start - 1], Double.NaN);
             }
-            if (prevList.isEmpty()) {
-                lst.add(Pair.of(p1, new MaybeRange(0, Optional.empty())));
-            } else if (prevList.size() == 1) {
-                lst.add(Pair.of(p1, new MaybeRange(prevList.get(0), Optional.empty())));
-            } else {
-                lst.add(Pair.of(p1, new MaybeRange(prevList.get(0), Optional.of(prevList.get(1)))));
+            for (int i = lattice.pathFrom[c]; i < lattice.pathTo[c]; i++) {
+                int x = lattice.path[i];
+                spans.add(normalized.origins[lattice.starts[x]], normalized.originEnds[lattice.ends[x]], lattice.scores[x]);
             }
+            covered = lattice.componentEnds[c] + 1;
         }
-
-        Pair<List<Position<String>>, Double> path = calculatePaths(lst);
-
-        List<String> wordList = new ArrayList<>();
-        for (Position<String> position : path.getLeft()) {
-            wordList.add(position.getNgram());
+        if (covered < normalized.size) {
+            spans.add(normalized.origins[covered], normalized.originEnds[normalized.size - 1], Double.NaN);
         }
-
-        int s = path.getLeft().get(0).getStart();
-        int e = lst.get(lst.size() - 1).getLeft().getEnd();
-        return new ScorePosition<>(wordList, path.getRight(), s, e);
-
+        if (workspace.isOversized()) {
+            workspaces.remove();
+        }
+        return spans;
     }
 
-    private Pair<List<Position<String>>, Double> calculatePaths(List<Pair<ScorePosition<String>, MaybeRange>> lst) {
-        int j = lst.size();
+    /**
+     * @return {@param text} normalized into {@param out}, with null treated as empty
+     */
+    private String normalize(String text, NormalizedText out) {
+        out.clear();
+        if (text != null) {
+            normalizer.append(text, 0, text.length(), true, out);
+        }
+        out.finish();
+        return out.toString();
+    }
 
-        HashMap<Integer, Double> memo = new HashMap<>();
-        Double result = opt(j, lst, memo);
+    /**
+     * Fills the workspace's lattice with the candidates, components and best paths of the normalized {@param text}.
+     */
+    private void decode(Lexicon lexicon, int minLength, String text, SegmentationWorkspace workspace) {
+        Lattice lattice = workspace.lattice;
+        lattice.clear();
+        lattice.lexicon = lexicon;
+        if (listener == SegmentationListener.NONE) {
+            meaningfulWords(minLength, text, lattice);
+            connectedSets(lattice);
+            for (int c = 0; c < lattice.components; c++) {
+                optComponent(lattice, c, workspace.decoder, text, minLength);
+            }
+        } else {
+            measure(minLength, text, workspace);
+        }
+    }
 
-        List<Integer> maxV =
-                memo.entrySet().stream()
-                        .sorted(Comparator.comparing(Map.Entry::getValue))
-                        .filter(x -> x.getValue().equals(result))
-                        .map(Map.Entry::getKey).collect(Collectors.toList());
-        j = maxV.get(maxV.size() - 1) + 1;
+    /**
+     * Runs the same stages as {@link #decode(Lexicon, int, String, SegmentationWorkspace)}, timing each for the listener.
+     */
+    private void measure(int minLength, String text, SegmentationWorkspace workspace) {
+        Lattice lattice = workspace.lattice;
+        ComponentDecoder decoder = workspace.decoder;
+        decoder.bigramLookups = 0;
+        decoder.bigramHits = 0;
+
+        long start = System.nanoTime();
+        meaningfulWords(minLength, text, lattice);
+        long matched = System.nanoTime();
+        connectedSets(lattice);
+        long split = System.nanoTime();
+        for (int c = 0; c < lattice.components; c++) {
+            optComponent(lattice, c, decoder, text, minLength);
+        }
+        long decoded = System.nanoTime();
+
+        SegmentationMetrics metrics = workspace.metrics;
+        metrics.textLength = text.length();
+        metrics.matchNanos = matched - start;
+        metrics.componentNanos = split - matched;
+        metrics.decodeNanos = decoded - split;
+        metrics.candidates = lattice.size;
+        metrics.components = lattice.components;
+        metrics.largestComponent = 0;
+        for (int c = 0; c < lattice.components; c++) {
+            metrics.largestComponent = Math.max(metrics.largestComponent, lattice.componentTo[c] - lattice.componentFrom[c]);
+        }
+        metrics.bigramLookups = decoder.bigramLookups;
+        metrics.bigramHits = decoder.bigramHits;
+        listener.onSegment(metrics);
+    }
 
-        List<Position<String>> path = new ArrayList<>();
-        path(j, path, memo, lst);
-        Collections.reverse(path);
-        return Pair.of(path, result);
+    /**
+     * Interleaves the best path through each component with the uncovered runs of {@param text} between them.
+     */
+    List<String> segments(String text, Lattice lattice) {
+        List<String> returnList = new ArrayList<>();
+        int covered = 0;
+        for (int c = 0; c < lattice.components; c++) {
+            int start = lattice.pathStart(c);
+            if (start > covered) {
+                returnList.add(text.substring(covered, start));
+            }
+            for (int i = lattice.pathFrom[c]; i < lattice.pathTo[c]; i++) {
+                returnList.add(lattice.lexicon.trie.word(lattice.wordIds[lattice.path[i]]));
+            }
+            covered = lattice.componentEnds[c] + 1;
+        }
+        if (covered < text.length()) {
+            returnList.add(text.substring(covered));
+        }
+        return returnList;
     }
 
-    private void path(int j,
-                      List<Position<String>> path,
-                      HashMap<Integer, Double> memo,
-                      List<Pair<ScorePosition<String>, MaybeRange>> lst) {
-        if (j == 0) {
+    /**
+     * Walks the lexicon's trie from every offset of {@param text}, adding each dictionary word of at
+     * least {@param minLength} characters that starts there to {@param lattice}, which ends up sorted by start.
+     */
+    void meaningfulWords(int minLength, String text, Lattice lattice) {
+        if (skipped == SkippedChars.NONE) {
+            for (int start = 0; start + minLength <= text.length(); start++) {
+                meaningfulWordsAt(minLength, text, start, text.length(), lattice);
+            }
             return;
         }
-
-        boolean b = j - 2 >= 0
-                ? Objects.equals(memo.get(j - 1), memo.get(j - 2))
-                : memo.get(0) != null && memo.get(0).equals(0d);
-        if (b) {
-            if (j != 1) {
-                path(j - 1, path, memo, lst);
-            } else {
-                path.add(lst.get(0).getLeft());
+        int limit = 0;
+        for (int start = 0; start + minLength <= text.length(); start++) {
+            if (start >= limit) {
+                limit = matchLimit(text, start, text.length());
             }
-        } else {
-            Pair<ScorePosition<String>, MaybeRange> prev = lst.get(j - 1);
-            MaybeRange range = prev.getRight();
-            if (!range.end.isPresent()) {
-                path.add(prev.getLeft());
-                path(prev.getRight().start, path, memo, lst);
-            } else {
-                List<Double> pList = Arrays.asList(memo.get(range.start - 1), memo.get(range.end.get() - 1));
-                Double maxP = Double.max(pList.get(0), pList.get(1));
-                path.add(prev.getLeft());
-                path(pList.get(0).equals(maxP) ? range.start : range.end.get(), path, memo, lst);
-
+            if (start + minLength <= limit) {
+                meaningfulWordsAt(minLength, text, start, limit, lattice);
             }
         }
     }
 
-    private Double opt(int j, List<Pair<ScorePosition<String>, MaybeRange>> lst, HashMap<Integer, Double> memo) {
-        if (j == 0) return null;
-
-        if (memo.containsKey(j - 1)) {
-            return memo.get(j - 1);
-        } else {
-            Pair<ScorePosition<String>, MaybeRange> next = lst.get(j - 1);
-            Double max = max(
-                    //choose j
-                    add(opt(next.getRight().start, lst, memo),
-                            next.getLeft().getScore(),
-                            penalize(j, next.getRight().start, lst)),
-                    //not choose j and jump to j-1 only when nesrest overlpping word has the same finish position
-                    lst.get(j - 2).getLeft().getEnd() == next.getLeft().getEnd() ? opt(j - 1, lst, memo) : null
-            );
-            memo.put(j - 1, max);
-            return max;
+    /**
+     * @return the first skipped char of {@param text} from {@param start} on, or {@param limit} if there is none
+     * before it. Words starting at {@param start} must end before it.
+     */
+    int matchLimit(CharSequence text, int start, int limit) {
+        if (skipped == SkippedChars.NONE) {
+            return limit;
         }
+        int end = start;
+        while (end < limit && !skipped.isSkipped(text.charAt(end))) {
+            end++;
+        }
+        return end;
     }
 
-    private Double penalize(int curri, int previ, List<Pair<ScorePosition<String>, MaybeRange>> lst) {
-        double penalty = -10.0; //FIXME how was this arrived at?
-        Pair<ScorePosition<String>, MaybeRange> curr = lst.get(curri - 1);
-        Pair<ScorePosition<String>, MaybeRange> prev = lst.get(previ - 1);
-
-        if (previ == 0) { // penalize gaps between words
-            return penalty * (curr.getLeft().getStart());
+    /**
+     * Adds the words starting at {@param start} of {@param text}, reading no further than {@param limit}.
+     */
+    void meaningfulWordsAt(int minLength, CharSequence text, int start, int limit, Lattice lattice) {
+        Lexicon lexicon = lattice.lexicon;
+        WordTrie trie = lexicon.trie;
+        int node = WordTrie.ROOT;
+        for (int i = start; i < limit; i++) {
+            node = trie.child(node, text.charAt(i));
+            if (node == WordTrie.NONE) {
+                break;
+            }
+            int length = i - start + 1;
+            if (length == minLength && text.charAt(start) == 'a') {
+                lattice.add(start, start, lexicon.articleId, lexicon.unigramScore(lexicon.articleId));
+            }
+            int wordId = trie.wordId(node);
+            if (length >= minLength && wordId != WordTrie.NONE && wordId != lexicon.articleId) {
+                lattice.add(start, i, wordId, lexicon.unigramScore(wordId));
+            }
         }
-
-        return stupidBackoff(curr, prev);
     }
 
     /**
-     * Stupid backoff from http://www.aclweb.org/anthology/D07-1090.pdf
+     * Splits the candidates of {@param lattice}, which are sorted by start, into runs of overlapping positions.
+     * A run ends as soon as the next candidate starts after the furthest end seen so far.
      */
-    private Double stupidBackoff(Pair<ScorePosition<String>, MaybeRange> curr, Pair<ScorePosition<String>, MaybeRange> prev) {
-        double alpha = 0.4;
-        if (curr.getLeft().getStart() - prev.getLeft().getEnd() == 1) {
-            Long count = bigramCounts.get(String.format("%s %s", prev.getLeft().getNgram(), curr.getLeft().getNgram()));
-            if (count != null) {
-                return (count / TOTAL) / prev.getLeft().getScore();
+    void connectedSets(Lattice lattice) {
+        int from = 0;
+        int end = -1;
+        for (int i = 0; i < lattice.size; i++) {
+            if (i > from && lattice.starts[i] > end) {
+                lattice.addComponent(from, i, end);
+                from = i;
             }
+            end = Math.max(end, lattice.ends[i]);
+        }
+        if (lattice.size > from) {
+            lattice.addComponent(from, lattice.size, end);
         }
-        return prev.getLeft().getScore() * alpha;
     }
 
-    private List<SuffixedPosition> cuts(int minLen, String word) {
-        ArrayList<SuffixedPosition> xs = new ArrayList<>();
-        int counter = 0;
-        for (int i = minLen; i < word.length() + 1; i++) {
-            xs.add(new SuffixedPosition(word.substring(counter, i), counter, counter + minLen, word.substring(i, word.length())));
-            counter++;
-        }
-        return xs;
+    void optComponent(Lattice lattice, int component, ComponentDecoder decoder) {
+        decoder.decode(lattice, component, lattice.lexicon);
     }
 
-    private double getUnigramScore(String word) {
-        double scale = Math.log10(TOTAL);
-        Long x = fullUnigramCounts.get(word);
-        return x != null
-                ? Math.log10(x) - scale
-                : Math.log10(10.0) - (scale + Math.log10(Math.pow(10, word.length())));
+    /**
+     * As {@link #optComponent(Lattice, int, ComponentDecoder)}, reusing the path through the same component
+     * of an earlier {@param text} when there is a component cache.
+     */
+    void optComponent(Lattice lattice, int component, ComponentDecoder decoder, CharSequence text, int minLength) {
+        if (componentCache == null
+                || lattice.componentTo[component] - lattice.componentFrom[component] < ComponentCache.MIN_CANDIDATES) {
+            optComponent(lattice, component, decoder);
+            return;
+        }
+        ComponentCache.Key key = componentCache.key(lattice, component, text, minLength);
+        if (!componentCache.restore(key, lattice, component)) {
+            optComponent(lattice, component, decoder);
+            if (this.lexicon == lattice.lexicon) {
+                componentCache.store(key, lattice, component);
+                if (this.lexicon != lattice.lexicon) {
+                    componentCache.remove(key);
+                }
+            }
+        }
     }
 
-    private static boolean isNotIntersecting(Position<String> left, Position<String> right) {
-        return right.getEnd() < left.getStart() || right.getStart() > left.getEnd();
+    Lexicon lexicon() {
+        return lexicon;
     }
 
-    private static Double max(Double d1, Double d2) {
-        if (d1 == null) return d2;
-        if (d2 == null) return d1;
-        return Double.max(d1, d2);
+    TextNormalizer normalizer() {
+        return normalizer;
     }
 
-    private static Double add(Double d1, Double d2, Double d3) {
-        if (d1 == null) {
-            return d2 + d3;
-        } else {
-            return d1 + d2 + d3;
+    public static final class Builder {
+        private final int minLength;
+        private Lexicon lexicon;
+        private SegmentationCache cache;
+        private ComponentCache componentCache;
+        private SegmentationListener listener;
+        private SkippedChars skipped;
+        private TextNormalizer normalizer;
+
+        private Builder(int minLength) {
+            this.minLength = minLength;
         }
-    }
 
+        /**
+         * @see #WordSegmentation(Lexicon, int)
+         */
+        public Builder lexicon(Lexicon lexicon) {
+            this.lexicon = lexicon;
+            return this;
+        }
 
-    // Simplifying porting from python
-    private class CircularList<E> extends ArrayList<E> {
+        /**
+         * @see #WordSegmentation(Lexicon, int, SegmentationCache)
+         */
+        public Builder cache(SegmentationCache cache) {
+            this.cache = cache;
+            return this;
+        }
 
-        @Override
-        public E get(int i) {
-            return super.get(i < 0 ? i + size() : i);
+        /**
+         * Reuses best paths through components seen before, which hits on texts that merely share long runs
+         * with earlier ones, with or without a {@link #cache(SegmentationCache)}. May be shared with other
+         * instances skipping the same chars.
+         */
+        public Builder componentCache(ComponentCache componentCache) {
+            this.componentCache = componentCache;
+            return this;
         }
 
-    }
+        /**
+         * @see #WordSegmentation(Lexicon, int, SegmentationCache, SegmentationListener)
+         */
+        public Builder listener(SegmentationListener listener) {
+            this.listener = listener;
+            return this;
+        }
 
-    /**
-     * Maps ngrams of length {@param minLength} to the words starting with them.
-     * Note we need to calculate this for the specific length we're allowing,
-     * so we either do this for each segmentation (and incur the CPU cost, but
-     * allow changing the minLength) or at construction (and incur a memory cost,
-     * and restrict it to a single length).
-     * <p>
-     * We've opted to the latter.
-     */
-    private Map<String, List<String>> ngramTree(int minLength, Map<String, Long> unigramCounts) {
-        Map<String, List<String>> ngramTree = new HashMap<>();
-        for (Map.Entry<String, Long> e : unigramCounts.entrySet()) {
-            String entry = e.getKey();
-            if (entry.length() >= minLength) {
-                String cut = entry.substring(0, minLength);
-
-                if (!ngramTree.containsKey(cut)) {
-                    ArrayList<String> v = new ArrayList<>();
-                    v.add(entry);
-                    ngramTree.put(cut, v);
-                } else {
-                    ngramTree.get(cut).add(entry);
-                }
-            }
+        /**
+         * Leaves runs of {@param skipped} chars out of matching, so they are always returned as unmatched text.
+         * Dictionary words containing them are no longer found.
+         */
+        public Builder skip(SkippedChars skipped) {
+            this.skipped = skipped;
+            return this;
+        }
+
+        /**
+         * Replaces the default lowercasing, trimming and apostrophe stripping applied before matching.
+         */
+        public Builder normalizer(TextNormalizer normalizer) {
+            this.normalizer = normalizer;
+            return this;
         }
 
-        return ngramTree;
-    }
-
-    private static Map<String, Long> loadWordList(String resourcePath) {
-        try (InputStream in = new GZIPInputStream(WordSegmentation.class.getResourceAsStream(resourcePath));
-             BufferedReader r = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
-            HashMap<String, Long> xs = new HashMap<>();
-            r.lines()
-                    .filter(StringUtils::isNotBlank)
-                    .map(x -> x.split("\t"))
-                    .filter(x -> x.length == 2)
-                    .forEach(x -> {
-                        String key = x[0].trim().toLowerCase();
-                        Long val = Long.parseLong(x[1]);
-                        xs.put(key, val);
-                    });
-            return xs;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        public WordSegmentation build() {
+            return new WordSegmentation(this);
         }
     }
 }
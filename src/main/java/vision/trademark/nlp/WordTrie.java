@@ -0,0 +1,195 @@
+package vision.trademark.nlp;
+
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A character trie over the dictionary, compiled into flat arrays.
+ * <p>
+ * Nodes are numbered breadth first so the children of a node are contiguous
+ * and sorted by label, which lets {@link #child(int, char)} binary search them.
+ * Walking the trie from an offset in the text finds every dictionary word
+ * starting at that offset in a single pass, without allocating substrings.
+ * <p>
+ * The arrays are held as buffers so a trie can be read in place from a mapped
+ * {@link Lexicon} file as well as from the heap.
+ */
+class WordTrie {
+    static final int ROOT = 0;
+    static final int NONE = -1;
+
+    final CharBuffer labels;
+    final IntBuffer firstChild;
+    final IntBuffer childCount;
+    final IntBuffer wordIds;
+    final IntBuffer wordOffsets;
+    final CharBuffer wordChars;
+
+    /**
+     * Words materialized so far, filled racily on first use.
+     */
+    private final String[] words;
+
+    WordTrie(CharBuffer labels,
+             IntBuffer firstChild,
+             IntBuffer childCount,
+             IntBuffer wordIds,
+             IntBuffer wordOffsets,
+             CharBuffer wordChars) {
+        this.labels = labels;
+        this.firstChild = firstChild;
+        this.childCount = childCount;
+        this.wordIds = wordIds;
+        this.wordOffsets = wordOffsets;
+        this.wordChars = wordChars;
+        this.words = new String[wordOffsets.capacity() - 1];
+    }
+
+    /**
+     * @return the node reached from {@param node} along {@param c}, or {@link #NONE}
+     */
+    int child(int node, char c) {
+        int lo = firstChild.get(node);
+        int hi = lo + childCount.get(node) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char label = labels.get(mid);
+            if (label < c) {
+                lo = mid + 1;
+            } else if (label > c) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @return the id of the word ending at {@param node}, or {@link #NONE}
+     */
+    int wordId(int node) {
+        return wordIds.get(node);
+    }
+
+    String word(int wordId) {
+        String word = words[wordId];
+        if (word == null) {
+            int start = wordOffsets.get(wordId);
+            int end = wordOffsets.get(wordId + 1);
+            char[] chars = new char[end - start];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = wordChars.get(start + i);
+            }
+            word = new String(chars);
+            words[wordId] = word;
+        }
+        return word;
+    }
+
+    /**
+     * @return the id of {@param word}, or {@link #NONE} if it is not in the dictionary
+     */
+    int find(String word) {
+        int node = ROOT;
+        for (int i = 0; i < word.length() && node != NONE; i++) {
+            node = child(node, word.charAt(i));
+        }
+        return node == NONE ? NONE : wordId(node);
+    }
+
+    /**
+     * @return the number of words, ids run from 0 (inclusive) to this (exclusive)
+     */
+    int size() {
+        return words.length;
+    }
+
+    int longestWord() {
+        int longest = 0;
+        for (int id = 0; id < size(); id++) {
+            longest = Math.max(longest, wordOffsets.get(id + 1) - wordOffsets.get(id));
+        }
+        return longest;
+    }
+
+    /**
+     * @return the number of nodes, including the root
+     */
+    int nodes() {
+        return labels.capacity();
+    }
+
+    static WordTrie of(Collection<String> dictionary) {
+        String[] words = dictionary.toArray(new String[0]);
+        Arrays.sort(words);
+
+        Node root = new Node();
+        int nodeCount = 1;
+        int charCount = 0;
+        for (int id = 0; id < words.length; id++) {
+            Node node = root;
+            for (int i = 0; i < words[id].length(); i++) {
+                char c = words[id].charAt(i);
+                Node next = node.children.get(c);
+                if (next == null) {
+                    next = new Node();
+                    node.children.put(c, next);
+                    nodeCount++;
+                }
+                node = next;
+            }
+            node.wordId = id;
+            charCount += words[id].length();
+        }
+
+        char[] labels = new char[nodeCount];
+        int[] firstChild = new int[nodeCount];
+        int[] childCount = new int[nodeCount];
+        int[] wordIds = new int[nodeCount];
+
+        Deque<Node> queue = new ArrayDeque<>();
+        queue.add(root);
+        int index = 0;
+        int next = 1;
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            wordIds[index] = node.wordId;
+            firstChild[index] = next;
+            childCount[index] = node.children.size();
+            for (Map.Entry<Character, Node> e : node.children.entrySet()) {
+                labels[next++] = e.getKey();
+                queue.add(e.getValue());
+            }
+            index++;
+        }
+
+        int[] wordOffsets = new int[words.length + 1];
+        char[] wordChars = new char[charCount];
+        for (int id = 0; id < words.length; id++) {
+            words[id].getChars(0, words[id].length(), wordChars, wordOffsets[id]);
+            wordOffsets[id + 1] = wordOffsets[id] + words[id].length();
+        }
+
+        WordTrie trie = new WordTrie(
+                CharBuffer.wrap(labels),
+                IntBuffer.wrap(firstChild),
+                IntBuffer.wrap(childCount),
+                IntBuffer.wrap(wordIds),
+                IntBuffer.wrap(wordOffsets),
+                CharBuffer.wrap(wordChars));
+        System.arraycopy(words, 0, trie.words, 0, words.length);
+        return trie;
+    }
+
+    private static class Node {
+        final TreeMap<Character, Node> children = new TreeMap<>();
+        int wordId = NONE;
+    }
+}
@@ -0,0 +1,84 @@
+package vision.trademark.nlp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class AsyncSegmenterTest {
+
+    private final WordSegmentation ws = new WordSegmentation(2);
+
+    @Test
+    public void testSegmentAsync() throws Exception {
+        try (AsyncSegmenter async = AsyncSegmenter.builder(ws).threads(2).build()) {
+            assertThat(async.segmentAsync("universityofwashington").get(10, TimeUnit.SECONDS),
+                    is(Arrays.asList("university", "of", "washington")));
+        }
+    }
+
+    @Test
+    public void testFullQueueRejects() throws Exception {
+        String poem = String.join("", Collections.nCopies(200, "MARGARETAREYOUGRIEVINGOVERGOLDENGROVE"));
+        try (AsyncSegmenter async = AsyncSegmenter.builder(ws).threads(1).batchSize(1).queueCapacity(1).build()) {
+            List<CompletableFuture<List<String>>> futures = new ArrayList<>();
+            boolean rejected = false;
+            for (int i = 0; i < 100 && !rejected; i++) {
+                CompletableFuture<List<String>> future = async.trySegmentAsync(poem);
+                rejected = future.isCompletedExceptionally();
+                futures.add(future);
+            }
+            assertThat(rejected, is(true));
+            assertThat(futures.get(futures.size() - 1).handle((x, e) -> e instanceof RejectedExecutionException).join(),
+                    is(true));
+        }
+    }
+
+    /**
+     * A local load generator: many clients submitting at once, reporting latency percentiles.
+     */
+    @Test
+    public void testLatencyUnderLoad() throws Exception {
+        List<String> texts = Arrays.asList("universityofwashington", "theheartgrowsolder", "trademarkvision",
+                "margaretareyougrievingovergoldengrove", "qqquniversityofwashingtonqqq");
+        int clients = 16;
+        int requests = 500;
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        try (AsyncSegmenter async = AsyncSegmenter.builder(ws).queueCapacity(64).build()) {
+            List<Future<long[]>> results = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                results.add(pool.submit(() -> {
+                    long[] latencies = new long[requests];
+                    for (int i = 0; i < requests; i++) {
+                        String text = texts.get(i % texts.size());
+                        long start = System.nanoTime();
+                        List<String> segments = async.segmentAsync(text).get(10, TimeUnit.SECONDS);
+                        latencies[i] = System.nanoTime() - start;
+                        assertThat(segments, is(ws.segment(text)));
+                    }
+                    return latencies;
+                }));
+            }
+            long[] all = new long[clients * requests];
+            for (int c = 0; c < clients; c++) {
+                System.arraycopy(results.get(c).get(), 0, all, c * requests, requests);
+            }
+            Arrays.sort(all);
+            System.out.printf("%d requests from %d clients: p50 %d us, p99 %d us%n", all.length, clients,
+                    all[all.length / 2] / 1000, all[all.length * 99 / 100] / 1000);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
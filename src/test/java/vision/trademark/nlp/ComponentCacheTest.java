@@ -0,0 +1,40 @@
+package vision.trademark.nlp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class ComponentCacheTest {
+
+    @Test
+    public void testSharedComponentHits() throws Exception {
+        ComponentCache cache = ComponentCache.byEntries(SegmentationCache.Policy.LRU, 100);
+        WordSegmentation ws = WordSegmentation.builder(2).componentCache(cache).build();
+
+        assertThat(ws.segment("universityofwashington"), is(Arrays.asList("university", "of", "washington")));
+        assertThat(ws.segment("456universityofwashington"),
+                is(Arrays.asList("456", "university", "of", "washington")));
+
+        // "universityof" and "washington" are decoded once, for the first text
+        assertThat(cache.stats().getMissCount(), is(2L));
+        assertThat(cache.stats().getHitCount(), is(2L));
+    }
+
+    @Test
+    public void testSameSegmentationsAsUncached() throws Exception {
+        WordSegmentation plain = new WordSegmentation(2);
+        WordSegmentation cached = WordSegmentation.builder(2)
+                .componentCache(ComponentCache.byWeight(SegmentationCache.Policy.LFU, 1024 * 1024))
+                .build();
+        String[] texts = {"theheartgrowsolder", "xxtheheartgrowsolderxx", "theheartgrowsold",
+                "anapple", "ananapple", "anappleaday", "theheartgrowsolder"};
+        for (String x : texts) {
+            for (int minLength = 1; minLength <= 3; minLength++) {
+                assertThat(x + " " + minLength, cached.segment(x, minLength), is(plain.segment(x, minLength)));
+            }
+        }
+    }
+}
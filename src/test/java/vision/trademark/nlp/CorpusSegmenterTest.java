@@ -0,0 +1,119 @@
+package vision.trademark.nlp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class CorpusSegmenterTest {
+
+    private static final String[] PHRASES = {"universityofwashington", "TheHeartGrowsOlder", "", "thetrademark",
+            "qqqvision", "caf\u00E9ofwashington"};
+
+    private final WordSegmentation ws = new WordSegmentation(2);
+    private Path dir;
+    private Path input;
+    private Path output;
+    private Path checkpoint;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("corpus");
+        input = dir.resolve("in.txt");
+        output = dir.resolve("out.txt");
+        checkpoint = dir.resolve("checkpoint");
+        StringBuilder x = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            x.append(PHRASES[i % PHRASES.length]).append(i).append(i % 7 == 0 ? "\r\n" : "\n");
+        }
+        x.append("nonewlineatend");
+        Files.write(input, x.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (Path x : new Path[]{input, output, checkpoint, dir}) {
+            Files.deleteIfExists(x);
+        }
+    }
+
+    @Test
+    public void testSegmentsEveryLineInOrder() throws Exception {
+        CorpusSegmenter.Progress progress = new CorpusSegmenter(ws, 4, 256, " ").run(input, output, null);
+
+        assertThat(progress.getLines(), is(1001L));
+        assertThat(Files.readAllLines(output, StandardCharsets.UTF_8), is(expected()));
+    }
+
+    @Test
+    public void testLinesLongerThanChunks() throws Exception {
+        // every chunk grows until it holds a whole line, and the last one has no newline to find
+        CorpusSegmenter.Progress progress = new CorpusSegmenter(ws, 2, 4, " ").run(input, output, null);
+
+        assertThat(progress.getLines(), is(1001L));
+        assertThat(Files.readAllLines(output, StandardCharsets.UTF_8), is(expected()));
+    }
+
+    @Test
+    public void testResumesFromCheckpoint() throws Exception {
+        CorpusSegmenter segmenter = new CorpusSegmenter(ws, 4, 256, " ");
+        segmenter.run(input, output, checkpoint);
+
+        // as if the run had failed after 400 lines, with part of the next chunk written
+        byte[] in = Files.readAllBytes(input);
+        byte[] out = Files.readAllBytes(output);
+        long inputOffset = offsetOfLine(in, 400);
+        long outputOffset = offsetOfLine(out, 400);
+        new CorpusSegmenter.Checkpoint(inputOffset, outputOffset, 400).write(checkpoint);
+        Files.write(output, "partial chunk".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        CorpusSegmenter.Progress progress = segmenter.run(input, output, checkpoint);
+        assertThat(progress.getLines(), is(601L));
+        assertThat(Files.readAllLines(output, StandardCharsets.UTF_8), is(expected()));
+        assertThat(CorpusSegmenter.Checkpoint.read(checkpoint).lines, is(1001L));
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsCheckpointPastTheOutput() throws Exception {
+        CorpusSegmenter segmenter = new CorpusSegmenter(ws, 4, 256, " ");
+        segmenter.run(input, output, checkpoint);
+        Files.write(output, new byte[0]);
+
+        segmenter.run(input, output, checkpoint);
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsCheckpointWithinALine() throws Exception {
+        new CorpusSegmenter.Checkpoint(offsetOfLine(Files.readAllBytes(input), 400) + 3, 0, 400).write(checkpoint);
+
+        new CorpusSegmenter(ws, 4, 256, " ").run(input, output, checkpoint);
+    }
+
+    private List<String> expected() throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(input, StandardCharsets.UTF_8)) {
+            lines.add(String.join(" ", ws.segment(line)));
+        }
+        return lines;
+    }
+
+    private static long offsetOfLine(byte[] x, int line) {
+        int i = 0;
+        for (int n = 0; n < line; i++) {
+            if (x[i] == '\n') {
+                n++;
+            }
+        }
+        return i;
+    }
+}
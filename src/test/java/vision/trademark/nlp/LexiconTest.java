@@ -0,0 +1,160 @@
+package vision.trademark.nlp;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+public class LexiconTest {
+
+    @Test
+    public void testMappedLexiconSegmentsLikeTheOriginal() throws Exception {
+        Path file = Files.createTempFile("lexicon", ".bin");
+        try {
+            Lexicon.defaultLexicon().write(file);
+            WordSegmentation original = new WordSegmentation(Lexicon.defaultLexicon(), 2);
+            WordSegmentation mapped = new WordSegmentation(Lexicon.map(file), 2);
+
+            for (String x : new String[]{"universityofwashington", "qqquniversityofwashingtonqqq", "theheartgrowsolder"}) {
+                assertThat(x, mapped.segment(x), is(original.segment(x)));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testReloadSwapsInLoadedLexicon() throws Exception {
+        WordSegmentation ws = new WordSegmentation(Lexicon.defaultLexicon(), 2);
+        assertThat(ws.segment("zorblaxvision"), is(Arrays.asList("z", "orb", "lax", "vision")));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ws.reload(() -> Lexicon.load(
+                    stream("zorblax\t1\nvision\t1\n"),
+                    stream("zorblax\t1000000\nvision\t2000000\n"),
+                    stream("zorblax vision\t1000\n")), executor).get();
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(ws.segment("zorblaxvision"), is(Arrays.asList("zorblax", "vision")));
+    }
+
+    @Test
+    public void testReloadDrainsCachesOfTheOldLexicon() throws Exception {
+        Lexicon old = Lexicon.defaultLexicon();
+        SegmentationCache cache = SegmentationCache.byEntries(SegmentationCache.Policy.LRU, 1000);
+        ComponentCache componentCache = ComponentCache.byEntries(SegmentationCache.Policy.LRU, 1000);
+        WordSegmentation ws = WordSegmentation.builder(2).lexicon(old).cache(cache).componentCache(componentCache).build();
+        String[] texts = {"universityofwashington", "theheartgrowsolder", "margaretareyougrieving",
+                "overgoldengroveunleaving", "leaveslikethethingsofman"};
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Future<?>> segmenting = new ArrayList<>();
+        try {
+            for (int t = 0; t < 3; t++) {
+                segmenting.add(executor.submit(() -> {
+                    for (int i = 0; !stop.get(); i++) {
+                        // misses keep the cache being filled while the lexicon is swapped
+                        ws.segment(texts[i % texts.length] + (i % 50));
+                    }
+                }));
+            }
+            Thread.sleep(50);
+            // too few words for any component to reach the component cache
+            ws.reload(() -> Lexicon.load(
+                    stream("zorblax\t1\nvision\t1\n"),
+                    stream("zorblax\t1000000\nvision\t2000000\n"),
+                    stream("")), executor).get();
+            Thread.sleep(50);
+            stop.set(true);
+            for (Future<?> f : segmenting) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for (String x : texts) {
+            for (int i = 0; i < 50; i++) {
+                assertThat(cache.get(old, x + i, 2), is(nullValue()));
+            }
+        }
+        assertThat(componentCache.stats().getSize(), is(0L));
+    }
+
+    @Test
+    public void testLongUncountedWordsScoreFinitely() throws Exception {
+        String x = StringUtils.repeat("ab", 200);
+        Lexicon lexicon = Lexicon.load(stream(x + "\t1\nab\t1\n"), stream("ab\t1000\n"), stream(""));
+
+        double score = lexicon.unigramScore(lexicon.trie.find(x));
+        assertThat(Double.isInfinite(score), is(false));
+        assertThat(score < lexicon.unigramScore(lexicon.trie.find("ab")), is(true));
+    }
+
+    @Test
+    public void testQuantizedLexiconSegmentsLikeTheOriginal() throws Exception {
+        Lexicon quantized = Lexicon.builder().quantize(8).fromResources();
+        Path file = Files.createTempFile("lexicon", ".bin");
+        try {
+            quantized.write(file);
+            assertThat(Files.size(file) < Lexicon.defaultLexicon().encode().capacity() * 3 / 4, is(true));
+
+            WordSegmentation original = new WordSegmentation(Lexicon.defaultLexicon(), 2);
+            WordSegmentation mapped = new WordSegmentation(Lexicon.map(file), 2);
+            for (String x : new String[]{"universityofwashington", "theheartgrowsolder", "thetrademarkvision"}) {
+                assertThat(x, mapped.segment(x), is(original.segment(x)));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testPruning() throws Exception {
+        Lexicon lexicon = Lexicon.builder()
+                .minUnigramCount(10)
+                .minBigramCount(100)
+                .load(stream("zorb\t1\nlax\t1\nvision\t1\n"),
+                        stream("zorb\t5\nlax\t1000\nvision\t2000\n"),
+                        stream("lax vision\t1000\nvision lax\t10\n"));
+
+        assertThat(lexicon.trie.find("zorb"), is(WordTrie.NONE));
+        int lax = lexicon.trie.find("lax");
+        int vision = lexicon.trie.find("vision");
+        assertThat(lexicon.bigramCount(lax, vision), is(1000.0));
+        assertThat(lexicon.bigramCount(vision, lax), is(0.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsOtherFiles() throws Exception {
+        Path file = Files.createTempFile("lexicon", ".bin");
+        try {
+            Files.write(file, "unigrams.txt.gz".getBytes("UTF-8"));
+            Lexicon.map(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static InputStream stream(String x) {
+        return new ByteArrayInputStream(x.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,72 @@
+package vision.trademark.nlp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+public class SegmentationCacheTest {
+
+    private static final Lexicon LEXICON = Lexicon.defaultLexicon();
+    private static final List<String> X = Collections.singletonList("x");
+
+    @Test
+    public void testLruEvictsLeastRecentlyUsed() throws Exception {
+        SegmentationCache cache = SegmentationCache.byEntries(SegmentationCache.Policy.LRU, 2);
+        cache.put(LEXICON, "a", 1, X);
+        cache.put(LEXICON, "b", 1, X);
+        cache.get(LEXICON, "a", 1);
+        cache.put(LEXICON, "c", 1, X);
+
+        assertThat(cache.get(LEXICON, "b", 1), is(nullValue()));
+        assertThat(cache.get(LEXICON, "a", 1), is(X));
+        assertThat(cache.stats().getEvictionCount(), is(1L));
+    }
+
+    @Test
+    public void testLfuEvictsLeastFrequentlyUsed() throws Exception {
+        SegmentationCache cache = SegmentationCache.byEntries(SegmentationCache.Policy.LFU, 2);
+        cache.put(LEXICON, "a", 1, X);
+        cache.put(LEXICON, "b", 1, X);
+        cache.get(LEXICON, "a", 1);
+        cache.get(LEXICON, "a", 1);
+        cache.get(LEXICON, "b", 1);
+        cache.put(LEXICON, "c", 1, X);
+
+        assertThat(cache.get(LEXICON, "b", 1), is(nullValue()));
+        assertThat(cache.get(LEXICON, "a", 1), is(X));
+        assertThat(cache.get(LEXICON, "c", 1), is(X));
+    }
+
+    @Test
+    public void testWeightLimit() throws Exception {
+        SegmentationCache cache = SegmentationCache.byWeight(SegmentationCache.Policy.LRU, 16 * 1024);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(LEXICON, "text" + i, 2, Arrays.asList("text", String.valueOf(i)));
+        }
+        assertThat(cache.stats().getWeight() <= 16 * 1024, is(true));
+        assertThat(cache.stats().getSize() + cache.stats().getEvictionCount(), is(1000L));
+    }
+
+    @Test
+    public void testCachedByNormalizedText() throws Exception {
+        SegmentationCache cache = SegmentationCache.byEntries(SegmentationCache.Policy.LRU, 100);
+        WordSegmentation ws = new WordSegmentation(Lexicon.defaultLexicon(), 2, cache);
+
+        List<String> first = ws.segment("University'OfWashington ");
+        assertThat(first, is(Arrays.asList("university", "of", "washington")));
+        assertThat(ws.segment("universityofwashington"), is(sameInstance(first)));
+        assertThat(ws.segment("universityofwashington", 3), is(first));
+
+        SegmentationCache.Stats stats = cache.stats();
+        assertThat(stats.getHitCount(), is(1L));
+        assertThat(stats.getMissCount(), is(2L));
+        assertThat(stats.getSize(), is(2L));
+    }
+}
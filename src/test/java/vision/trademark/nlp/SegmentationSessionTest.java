@@ -0,0 +1,55 @@
+package vision.trademark.nlp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class SegmentationSessionTest {
+
+    private final WordSegmentation ws = new WordSegmentation(1);
+
+    @Test
+    public void testTyping() throws Exception {
+        String x = "ItWillComeToSuchSightsColderByAndBy";
+        SegmentationSession session = ws.session();
+        for (int i = 0; i < x.length(); i++) {
+            session.append(x.substring(i, i + 1));
+            assertThat(session.text(), session.segments(), is(ws.segment(session.text())));
+        }
+        assertThat(session.segments(), is(Arrays.asList(
+                "it", "will", "come", "to", "such", "sights", "colder", "by", "and", "by")));
+    }
+
+    @Test
+    public void testEditing() throws Exception {
+        SegmentationSession session = ws.session(2);
+        session.update("universityofwashington");
+        assertThat(session.edit(10, 12, "in"), is(ws.segment("universityinwashington", 2)));
+        assertThat(session.edit(0, 0, "The "), is(ws.segment("The universityinwashington", 2)));
+        assertThat(session.edit(4, 14, ""), is(ws.segment("The inwashington", 2)));
+        assertThat(session.edit(6, 16, "x"), is(ws.segment("The inx", 2)));
+        assertThat(session.update(""), is(ws.segment("", 2)));
+    }
+
+    @Test
+    public void testStartsOverWithReloadedLexicon() throws Exception {
+        WordSegmentation ws = new WordSegmentation(Lexicon.defaultLexicon(), 2);
+        SegmentationSession session = ws.session();
+        assertThat(session.update("zorblaxvision"), is(Arrays.asList("z", "orb", "lax", "vision")));
+
+        ws.setLexicon(Lexicon.load(
+                stream("zorblax\t1\nvision\t1\n"),
+                stream("zorblax\t1000000\nvision\t2000000\n"),
+                stream("zorblax vision\t1000\n")));
+        assertThat(session.append(" "), is(Arrays.asList("zorblax", "vision")));
+    }
+
+    private static ByteArrayInputStream stream(String x) {
+        return new ByteArrayInputStream(x.getBytes(StandardCharsets.UTF_8));
+    }
+}
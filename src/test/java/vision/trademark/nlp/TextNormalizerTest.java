@@ -0,0 +1,77 @@
+package vision.trademark.nlp;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class TextNormalizerTest {
+
+    private final TextNormalizer folding = TextNormalizer.builder()
+            .compatibility(true)
+            .foldDiacritics(true)
+            .build();
+
+    @Test
+    public void testDefault() throws Exception {
+        TextNormalizer x = TextNormalizer.DEFAULT;
+        assertThat(x.normalize("  Don't STOP\n"), is("dont stop"));
+        assertThat(x.normalize("universityqqq ' "), is("universityqqq "));
+        assertThat(x.normalize("''"), is(""));
+    }
+
+    @Test
+    public void testFolding() throws Exception {
+        assertThat(folding.normalize("\uFF23\uFF21\uFF26\u00C9"), is("cafe"));
+        assertThat(folding.normalize("cafe\u0301 \uFB01ne"), is("cafe fine"));
+        assertThat(TextNormalizer.DEFAULT.normalize("caf\u00C9"), is("caf\u00E9"));
+    }
+
+    @Test
+    public void testStripPunctuation() throws Exception {
+        TextNormalizer x = TextNormalizer.builder().strip(TextNormalizer.PUNCTUATION).build();
+        assertThat(x.normalize("Trade-Mark.Vision!"), is("trademarkvision"));
+    }
+
+    @Test
+    public void testFoldedSegmentation() throws Exception {
+        WordSegmentation ws = WordSegmentation.builder(2).normalizer(folding).build();
+        String x = "\uFF35\uFF4E\uFF49\uFF56\uFF45\uFF52\uFF53\uFF49\uFF54\uFF59ofwa\u0301shington";
+
+        assertThat(ws.segment(x), is(Arrays.asList("university", "of", "washington")));
+        SegmentSpans spans = ws.segmentSpans(x, new SegmentSpans());
+        assertThat(Arrays.asList(spans.substrings(x)), is(Arrays.asList(
+                "\uFF35\uFF4E\uFF49\uFF56\uFF45\uFF52\uFF53\uFF49\uFF54\uFF59", "of", "wa\u0301shington")));
+
+        List<String> streamed = new ArrayList<>();
+        ws.segment(new OneCharReader(x), streamed::add);
+        assertThat(streamed, is(ws.segment(x)));
+    }
+
+    /**
+     * Splits every combining mark from the char before it.
+     */
+    private static class OneCharReader extends Reader {
+        private final Reader in;
+
+        OneCharReader(String x) {
+            this.in = new StringReader(x);
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return in.read(cbuf, off, Math.min(len, 1));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
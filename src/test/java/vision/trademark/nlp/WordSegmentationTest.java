@@ -2,8 +2,14 @@ package vision.trademark.nlp;
 
 import org.junit.Test;
 
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -32,6 +38,127 @@ public class WordSegmentationTest {
         assertThat(ws.segment("theheartgrowsolder"), is(Stream.of("the", "heart", "grows", "older").collect(Collectors.toList())));
     }
 
+    @Test
+    public void testMinLengthPerCall() throws Exception {
+        assertThat(ws.segment("MARGARETAREYOU", 4), is(Arrays.asList("margare", "tare", "you")));
+        assertThat(ws.segment("MARGARETAREYOU", 2), is(ws.segment("MARGARETAREYOU")));
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        InMemorySegmentationListener listener = new InMemorySegmentationListener();
+        WordSegmentation measured = new WordSegmentation(Lexicon.defaultLexicon(), 2, null, listener);
+
+        assertThat(measured.segment("qqqtheheartgrowsolder"), is(ws.segment("qqqtheheartgrowsolder")));
+        assertThat(listener.getSegmentations(), is(1L));
+        assertThat(listener.getComponents() >= 2, is(true));
+        assertThat(listener.getCandidates() >= listener.getLargestComponent(), is(true));
+        assertThat(listener.getBigramLookups() >= listener.getBigramHits(), is(true));
+        assertThat(listener.getBigramHits() > 0, is(true));
+    }
+
+    @Test
+    public void testSpansIndexOriginalText() throws Exception {
+        String text = "  University'OfWashington qqq ";
+        SegmentSpans spans = ws.segmentSpans(text, new SegmentSpans());
+
+        assertThat(spans.size(), is(4));
+        assertThat(Arrays.asList(spans.substrings(text)), is(Arrays.asList("University", "Of", "Washington", " qqq")));
+        assertThat(spans.isWord(0), is(true));
+        assertThat(spans.isWord(3), is(false));
+
+        ws.segmentSpans("trademarkvision", spans);
+        assertThat(Arrays.asList(spans.substrings("trademarkvision")), is(ws.segment("trademarkvision")));
+    }
+
+    @Test
+    public void testTopK() throws Exception {
+        List<ScoredSegmentation> top = ws.segmentTopK("theheartgrowsolder", 5);
+
+        assertThat(top.size(), is(5));
+        assertThat(top.get(0).getWords(), is(ws.segment("theheartgrowsolder")));
+        List<List<String>> words = top.stream().map(ScoredSegmentation::getWords).collect(Collectors.toList());
+        assertThat(words.contains(Arrays.asList("the", "he", "art", "grows", "older")), is(true));
+        for (int i = 1; i < top.size(); i++) {
+            assertThat(top.get(i).getScore() <= top.get(i - 1).getScore(), is(true));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveMinLength() throws Exception {
+        ws.segment("trademarkvision", 0);
+    }
+
+    /**
+     * A single connected component tens of thousands of candidates long, which used to overflow the stack.
+     */
+    @Test
+    public void testLongComponent() throws Exception {
+        List<String> xs = Stream.of("the", "heart", "grows", "older").collect(Collectors.toList());
+        String x = String.join("", xs);
+        List<String> segment = ws.segment(String.join("", Collections.nCopies(2000, x)));
+        assertThat(segment, is(Collections.nCopies(2000, xs).stream().flatMap(List::stream).collect(Collectors.toList())));
+    }
+
+    @Test
+    public void testWorkspaceReuse() throws Exception {
+        SegmentationWorkspace workspace = new SegmentationWorkspace();
+        assertThat(ws.segment("qqquniversityofwashingtonqqq", 2, workspace), is(Arrays.asList("qqq", "university", "of", "washington", "qqq")));
+        assertThat(ws.segment("trademarkvision", 2, workspace), is(Arrays.asList("trademark", "vision")));
+    }
+
+    @Test
+    public void testConcurrentSegment() throws Exception {
+        List<String> xs = Arrays.asList("universityofwashington", "qqquniversityofwashingtonqqq", "theheartgrowsolder", "MARGARETAREYOU");
+        List<List<String>> expected = xs.stream().map(ws::segment).collect(Collectors.toList());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<List<String>>>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit(() -> xs.stream().map(ws::segment).collect(Collectors.toList())));
+            }
+            for (Future<List<List<String>>> f : futures) {
+                assertThat(f.get(), is(expected));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSegmentAllKeepsOrder() throws Exception {
+        List<String> xs = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            xs.add(i % 2 == 0 ? "universityofwashington" : "trademarkvision" + i);
+        }
+        List<List<String>> segments = ws.segmentAll(xs);
+        for (int i = 0; i < xs.size(); i++) {
+            assertThat(segments.get(i), is(ws.segment(xs.get(i))));
+        }
+    }
+
+    @Test
+    public void testStreamingMatchesSegment() throws Exception {
+        String poem = "MARGARETAREYOUGRIEVINGOVERGOLDENGROVEUNLEAVINGLEAVESLIKETHETHINGSOFMANYOUWITHYOURFRESHTHOUGHTSCAREFORCANYOU";
+        for (String x : Arrays.asList(poem, "qqquniversityofwashingtonqqq", "  trademark vision\n", "universityqqq ' ", "''", "")) {
+            List<String> streamed = new ArrayList<>();
+            ws.segment(new StringReader(x), streamed::add);
+            assertThat(x, streamed, is(ws.segment(x)));
+        }
+    }
+
+    @Test
+    public void testSkippedRuns() throws Exception {
+        WordSegmentation skipping = WordSegmentation.builder(2).skip(SkippedChars.DIGITS).build();
+        String x = "trademark20170412vision";
+
+        assertThat(skipping.segment(x), is(Arrays.asList("trademark", "20170412", "vision")));
+        List<String> streamed = new ArrayList<>();
+        skipping.segment(new StringReader(x), streamed::add);
+        assertThat(streamed, is(skipping.segment(x)));
+    }
+
     @Test
     public void testLarge() throws Exception {
         String x = "MARGARETAREYOUGRIEVINGOVERGOLDENGROVEUNLEAVINGLEAVESLIKETHETHINGSOFMANYOUWITHYOURFRESHTHOUGHTSCAREFORCANYOUAHASTHEHEARTGROWSOLDERITWILLCOMETOSUCHSIGHTSCOLDERBYANDBYNORSPAREASIGHTHOUGHWORLDSOFWANWOODLEAFMEALLIEANDYETYOUWILLWEEPANDKNOWWHYNOWNOMATTERCHILDTHENAMESORROWSSPRINGSARETHESAMENORMOUTHHADNONORMINDEXPRESSEDWHATHEARTHEARDOFGHOSTGUESSEDITISTHEBLIGHTMANWASBORNFORITISMARGARETYOUMOURNFOR";